@@ -28,6 +28,28 @@ public class DatabaseConfiguration {
     public boolean backups;
     @InjectConfig("uuidUpdate")
     public boolean runUUIDUpdate;
+    @InjectConfig("flushThreads")
+    public int flushThreads = 1;
+    @InjectConfig("flushQueue")
+    public int flushQueueDepth = 16;
+    @InjectConfig("flushBatchSize")
+    public int flushBatchSize = 500;
+    @InjectConfig("poolSize")
+    public int poolSize = 3;
+    @InjectConfig("journal")
+    public boolean journal = false;
+    @InjectConfig("journalInterval")
+    public int journalInterval = 5;
+    @InjectConfig("loaderThreads")
+    public int loaderThreads = 4;
+    @InjectConfig("offlineCacheSize")
+    public int offlineCacheSize = 500;
+    @InjectConfig("offlineCacheMemory")
+    public int offlineCacheMemory = 16;
+    @InjectConfig("offlineCacheTTL")
+    public int offlineCacheTTL = 600;
+    @InjectConfig("negativeCacheTTL")
+    public int negativeCacheTTL = 30;
     
     public int latestVersion;
     
@@ -37,7 +59,7 @@ public class DatabaseConfiguration {
 
     @Override
     public String toString() {
-        return "DatabaseConfiguration{" + "databaseType=" + databaseType + ", version=" + version + ", host=" + host + ", username=" + username + ", database=" + database + ", tablePrefix=" + tablePrefix + ", port=" + port + ", backups=" + backups + ", latestVersion=" + latestVersion + '}';
+        return "DatabaseConfiguration{" + "databaseType=" + databaseType + ", version=" + version + ", host=" + host + ", username=" + username + ", database=" + database + ", tablePrefix=" + tablePrefix + ", port=" + port + ", backups=" + backups + ", flushThreads=" + flushThreads + ", flushQueueDepth=" + flushQueueDepth + ", flushBatchSize=" + flushBatchSize + ", poolSize=" + poolSize + ", journal=" + journal + ", journalInterval=" + journalInterval + ", loaderThreads=" + loaderThreads + ", offlineCacheSize=" + offlineCacheSize + ", offlineCacheMemory=" + offlineCacheMemory + ", offlineCacheTTL=" + offlineCacheTTL + ", negativeCacheTTL=" + negativeCacheTTL + ", latestVersion=" + latestVersion + '}';
     }
     
     
@@ -0,0 +1,83 @@
+package com.tehbeard.beardstat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Track types that can be toggled per world in worlds.yml, one per Refs.TRACK_* name.
+ * Each type owns one bit, so a set of enabled types fits in an int.
+ *
+ * @author James
+ */
+public enum TrackType {
+
+    BLOCK_PLACE(Refs.TRACK_BLOCK_PLACE),
+    BLOCK_BREAK(Refs.TRACK_BLOCK_BREAK),
+
+    ITEM_CRAFT(Refs.TRACK_ITEM_CRAFT),
+    ITEM_DROP(Refs.TRACK_ITEM_DROP),
+    ITEM_PICKUP(Refs.TRACK_ITEM_PICKUP),
+
+    ENTITY_HEAL(Refs.TRACK_ENTITY_HEAL),
+    ENTITY_TAME(Refs.TRACK_ENTITY_TAME),
+    ENTITY_POTION(Refs.TRACK_ENTITY_POTION),
+    ENTITY_BOW(Refs.TRACK_ENTITY_BOW),
+    ENTITY_INTERACT(Refs.TRACK_ENTITY_INTERACT),
+    ENTITY_SHEAR(Refs.TRACK_ENTITY_SHEAR),
+    ENTITY_DAMAGEDEALT(Refs.TRACK_ENTITY_PREFIX + "damagedealt"),
+    ENTITY_DAMAGETAKEN(Refs.TRACK_ENTITY_PREFIX + "damagetaken"),
+    ENTITY_KILLS(Refs.TRACK_ENTITY_PREFIX + "kills"),
+    ENTITY_DEATHS(Refs.TRACK_ENTITY_PREFIX + "deaths"),
+
+    PLAYER_ARM(Refs.TRACK_PLAYER_ARM),
+    PLAYER_FISH(Refs.TRACK_PLAYER_FISH),
+    PLAYER_MOVE(Refs.TRACK_PLAYER_MOVE),
+    PLAYER_BUCKET(Refs.TRACK_PLAYER_BUCKET),
+    PLAYER_USE(Refs.TRACK_PLAYER_USE),
+    PLAYER_EXP(Refs.TRACK_PLAYER_EXP),
+    PLAYER_CONSUME(Refs.TRACK_PLAYER_CONSUME),
+    PLAYER_TIME(Refs.TRACK_PLAYER_TIME);
+
+    private static final Map<String, TrackType> byName = new HashMap<String, TrackType>();
+
+    /**
+     * Mask with the bit of every type set
+     */
+    public static final int ALL;
+
+    static {
+        int all = 0;
+        for (TrackType type : values()) {
+            byName.put(type.getName(), type);
+            all |= type.getBit();
+        }
+        ALL = all;
+    }
+
+    private final String name;
+
+    private TrackType(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return name used in worlds.yml black/whitelists
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    public int getBit() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Look up a type by its worlds.yml name
+     *
+     * @param name
+     * @return the type, or null if no type has that name
+     */
+    public static TrackType fromName(String name) {
+        return byName.get(name);
+    }
+}
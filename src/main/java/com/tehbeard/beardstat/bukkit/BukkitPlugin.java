@@ -28,9 +28,11 @@ import org.mcstats.Metrics.Plotter;
 import com.tehbeard.beardstat.bukkit.commands.LastOnCommand;
 import com.tehbeard.beardstat.bukkit.commands.StatCommand;
 import com.tehbeard.beardstat.bukkit.commands.StatPageCommand;
+import com.tehbeard.beardstat.bukkit.commands.StatReloadCommand;
 import com.tehbeard.beardstat.bukkit.commands.StatScriptExecCommand;
 import com.tehbeard.beardstat.bukkit.commands.playedCommand;
 import com.tehbeard.beardstat.containers.EntityStatBlob;
+import com.tehbeard.beardstat.dataproviders.ConnectionPool;
 import com.tehbeard.beardstat.dataproviders.IStatDataProvider;
 import com.tehbeard.beardstat.dataproviders.JDBCStatDataProvider;
 import com.tehbeard.beardstat.dataproviders.MysqlStatDataProvider;
@@ -40,13 +42,17 @@ import com.tehbeard.beardstat.bukkit.identifier.IdentifierService;
 import com.tehbeard.beardstat.bukkit.listeners.StatBlockListener;
 import com.tehbeard.beardstat.bukkit.listeners.StatCraftListener;
 import com.tehbeard.beardstat.bukkit.listeners.StatEntityListener;
+import com.tehbeard.beardstat.bukkit.listeners.StatListenerRegistry;
 import com.tehbeard.beardstat.bukkit.listeners.StatPlayerListener;
 import com.tehbeard.beardstat.bukkit.listeners.StatVehicleListener;
 import com.tehbeard.beardstat.manager.EntityStatManager;
+import com.tehbeard.beardstat.manager.OfflineBlobCache;
 import com.tehbeard.beardstat.manager.OnlineTimeManager;
 import com.tehbeard.beardstat.bukkit.utils.BukkitHumanNameGenerator;
+import com.tehbeard.beardstat.bukkit.utils.MovementTracker;
 import com.tehbeard.beardstat.LanguagePack;
 import com.tehbeard.beardstat.bukkit.utils.StatUtils;
+import com.tehbeard.beardstat.utils.FlushScheduler;
 import com.tehbeard.beardstat.bukkit.cfg.YamlConfigInjector;
 import com.tehbeard.beardstat.bukkit.commands.Commands;
 
@@ -61,7 +67,14 @@ public class BukkitPlugin extends JavaPlugin implements DbPlatform {
     
 
     private int saveTaskId;
+    private int movementTaskId;
+    private int journalTaskId = -1;
+    private int journalInterval;
     private EntityStatManager statManager;
+    private FlushScheduler flushScheduler;
+    private JDBCStatDataProvider jdbcProvider;
+    private final MovementTracker movementTracker = new MovementTracker();
+    private StatListenerRegistry listenerRegistry;
     public static StatConfiguration configuration;
     public static WorldManager worldManager;
 
@@ -74,6 +87,15 @@ public class BukkitPlugin extends JavaPlugin implements DbPlatform {
         return this.statManager;
     }
 
+    /**
+     * Returns the movement accumulator used by the listeners
+     *
+     * @return
+     */
+    public MovementTracker getMovementTracker() {
+        return this.movementTracker;
+    }
+
     @Override
     public void onDisable() {
         /*
@@ -82,10 +104,14 @@ public class BukkitPlugin extends JavaPlugin implements DbPlatform {
          */
         getLogger().info("Stopping auto flusher");
         getServer().getScheduler().cancelTask(this.saveTaskId);
+        getServer().getScheduler().cancelTask(this.movementTaskId);
+        getServer().getScheduler().cancelTask(this.journalTaskId);
         if (this.statManager != null) {
+            this.movementTracker.run();
             getLogger().info("Flushing cache to database");
             this.statManager.saveCache();
             this.statManager.flush();
+            this.statManager.shutdown();
             getLogger().info("Cache flushed to database");
         }
     }
@@ -150,6 +176,9 @@ public class BukkitPlugin extends JavaPlugin implements DbPlatform {
         getLogger().info("Using " + configuration.dbType + " Adpater");
         DatabaseConfiguration dbConfig = getDatabaseConfiguration(getConfig().getConfigurationSection("stats.database"));
         IStatDataProvider db = getDataProvider(dbConfig);
+        this.journalInterval = dbConfig.journal ? dbConfig.journalInterval : 0;
+        this.flushScheduler = db instanceof JDBCStatDataProvider ? ((JDBCStatDataProvider) db).getFlushScheduler() : null;
+        this.jdbcProvider = db instanceof JDBCStatDataProvider ? (JDBCStatDataProvider) db : null;
 
         if (db == null) {
             getLogger().severe(" Error loading database, disabling plugin");
@@ -169,7 +198,8 @@ public class BukkitPlugin extends JavaPlugin implements DbPlatform {
         }
 
         // start the player manager
-        this.statManager = new EntityStatManager(this, db);
+        OfflineBlobCache offlineCache = new OfflineBlobCache(dbConfig.offlineCacheSize, dbConfig.offlineCacheMemory * (1L << 20), dbConfig.offlineCacheTTL * 1000L);
+        this.statManager = new EntityStatManager(this, db, dbConfig.loaderThreads, offlineCache);
 
         getLogger().info("Loading id mapping");
 
@@ -186,18 +216,31 @@ public class BukkitPlugin extends JavaPlugin implements DbPlatform {
             StatEntityListener sel = new StatEntityListener(this.statManager, this);
             StatVehicleListener svl = new StatVehicleListener(this.statManager, this);
             StatCraftListener scl = new StatCraftListener(this.statManager, this);
-            getServer().getPluginManager().registerEvents(sbl, this);
-            getServer().getPluginManager().registerEvents(spl, this);
-            getServer().getPluginManager().registerEvents(sel, this);
-            getServer().getPluginManager().registerEvents(svl, this);
-            getServer().getPluginManager().registerEvents(scl, this);
+            this.listenerRegistry = new StatListenerRegistry(this);
+            this.listenerRegistry.add(sbl);
+            this.listenerRegistry.add(spl);
+            this.listenerRegistry.add(sel);
+            this.listenerRegistry.add(svl);
+            this.listenerRegistry.add(scl);
+            registerListeners();
+            getServer().getPluginManager().registerEvents(worldManager, this);
         } catch (Exception e) {
             handleError(new BeardStatRuntimeException("Error registering events", e, false));
         }
 
         // start Database flusher.
         try {
+            this.movementTaskId = getServer().getScheduler().scheduleSyncRepeatingTask(this, this.movementTracker, 20L, 20L);
             this.saveTaskId = getServer().getScheduler().scheduleSyncRepeatingTask(this, new DbFlusher(), 2400L, 2400L);
+            if (this.journalInterval > 0) {
+                long ticks = this.journalInterval * 20L;
+                this.journalTaskId = getServer().getScheduler().scheduleSyncRepeatingTask(this, new Runnable() {
+                    @Override
+                    public void run() {
+                        statManager.journalCache();
+                    }
+                }, ticks, ticks);
+            }
         } catch (Exception e) {
             handleError(new BeardStatRuntimeException("Error starting database flusher", e, false));
         }
@@ -210,6 +253,7 @@ public class BukkitPlugin extends JavaPlugin implements DbPlatform {
             getCommand("laston").setExecutor(new LastOnCommand(this.statManager, this));
             //getCommand("beardstatdebug").setExecutor(this.statManager);
             getCommand("statadmin").setExecutor(new Commands(this.statManager, this));
+            getCommand("statreload").setExecutor(new StatReloadCommand(this.statManager, this));
             getCommand("statexecscript").setExecutor(new StatScriptExecCommand(this.statManager, this, (db instanceof JDBCStatDataProvider ? (JDBCStatDataProvider) db : null)));
         } catch (Exception e) {
             handleError(new BeardStatRuntimeException("Error registering commands", e, false));
@@ -241,6 +285,28 @@ public class BukkitPlugin extends JavaPlugin implements DbPlatform {
 
     }
 
+    /**
+     * Re-read worlds.yml and replace the world tracking policy.
+     */
+    public void reloadWorlds() {
+        File worldsFile = new File(getDataFolder(), "worlds.yml");
+        worldManager.reload(YamlConfiguration.loadConfiguration(worldsFile).getConfigurationSection("worlds"));
+        this.movementTracker.invalidateAll();
+        registerListeners();
+        getLogger().info("Reloaded worlds.yml");
+    }
+
+    /**
+     * (Re)register stat listeners, handlers for track types no world enables are left out.
+     */
+    private void registerListeners() {
+        if (this.listenerRegistry == null) {
+            return;
+        }
+        int count = this.listenerRegistry.register(worldManager.getEnabledTypes());
+        getLogger().log(Level.CONFIG, "Registered {0} stat event handlers", count);
+    }
+
     /**
      * Update config as needed.
      */
@@ -332,6 +398,23 @@ public class BukkitPlugin extends JavaPlugin implements DbPlatform {
             statManager.saveCache();
             statManager.flush();
             getLogger().config("flush completed");
+            getLogger().log(Level.CONFIG, "Blob load latency p50: {0}ms p99: {1}ms, {2} load batches queued",
+                    new Object[]{statManager.getLoadLatency(50), statManager.getLoadLatency(99), statManager.getLoadQueueDepth()});
+            getLogger().log(Level.CONFIG, "Changes while loading: {0} coalesced, {1} overflowed to delegates",
+                    new Object[]{statManager.getCoalescedChanges(), statManager.getOverflowedChanges()});
+            if (flushScheduler != null) {
+                getLogger().log(Level.CONFIG, "Flush queue: {0} waiting, {1} running, {2} coalesced, {3} rejected",
+                        new Object[]{flushScheduler.getQueueDepth(), flushScheduler.getActiveCount(), flushScheduler.getCoalesced(), flushScheduler.getRejected()});
+            }
+            //Reinitialising the provider replaces its pool
+            ConnectionPool pool = jdbcProvider != null ? jdbcProvider.getPool() : null;
+            if (pool != null) {
+                getLogger().log(Level.CONFIG, "Connection pool: {0} of {1} idle, {2} acquires, {3} waited {4}ms in total, longest wait {5}ms",
+                        new Object[]{pool.getIdleCount(), pool.getSize(), pool.getAcquireCount(), pool.getWaitCount(), pool.getTotalWaitMillis(), pool.getMaxWaitMillis()});
+            }
+            OfflineBlobCache offline = statManager.getOfflineCache();
+            getLogger().log(Level.CONFIG, "Offline cache: {0} blobs, {1} bytes, {2} hits, {3} misses",
+                    new Object[]{offline.size(), offline.getWeight(), offline.getHits(), offline.getMisses()});
 
         }
     }
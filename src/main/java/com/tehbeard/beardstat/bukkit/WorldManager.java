@@ -9,25 +9,38 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bukkit.GameMode;
+import org.bukkit.World;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldUnloadEvent;
 
+import com.tehbeard.beardstat.TrackType;
 import com.tehbeard.beardstat.cfg.InjectConfig;
 import com.tehbeard.beardstat.bukkit.cfg.YamlConfigInjector;
 
 /**
+ * Decides which {@link TrackType}s are recorded in which world and game mode.
+ * worlds.yml is compiled into a bitmask of enabled types per game mode for each world,
+ * so a check is a lookup by world UUID, an array index and a bit test.
+ * {@link #reload(ConfigurationSection)} swaps in a newly compiled policy without a restart.
  *
  * @author James
  */
-public class WorldManager {
+public class WorldManager implements Listener {
 
+    private static final int MODES = GameMode.values().length;
 
-    private WorldData defaultWorld = new WorldData(true,false,false);
-    Map<String,WorldData> worlds = new HashMap<String, WorldData>();
+    private volatile Policy policy;
 
     public WorldManager() {
+        this(null);
     }
 
     private static class WorldData {
@@ -56,32 +69,112 @@ public class WorldManager {
         }
 
         public boolean shouldTrack(Player player, String trackType){
-            GameMode gm = player.getGameMode();
-            return 
-                    (
-                            (gm == GameMode.SURVIVAL  && survival) ||
-                            (gm == GameMode.CREATIVE  && creative) ||
-                            (gm == GameMode.ADVENTURE && adventure)
-                    ) && trackType(trackType);
+            return trackMode(player.getGameMode()) && trackType(trackType);
             //Track if mode allowed and not blocking a certain track type
         }
-        
+
+        public boolean trackMode(GameMode gm){
+            return
+                    (gm == GameMode.SURVIVAL  && survival) ||
+                    (gm == GameMode.CREATIVE  && creative) ||
+                    (gm == GameMode.ADVENTURE && adventure);
+        }
+
         public boolean trackType(String type){
             if(blacklist.size() > 0 && blacklist.contains(type)){
                     return false;
             }
-            
+
             if(whitelist.size() > 0 && !whitelist.contains(type)){
                 return false;
             }
-            
-            return true;    
+
+            return true;
+        }
+
+        /**
+         * @return enabled types for each game mode, indexed by ordinal
+         */
+        public int[] compile(){
+            int types = 0;
+            for(TrackType type : TrackType.values()){
+                if(trackType(type.getName())){
+                    types |= type.getBit();
+                }
+            }
+            int[] masks = new int[MODES];
+            for(GameMode gm : GameMode.values()){
+                masks[gm.ordinal()] = trackMode(gm) ? types : 0;
+            }
+            return masks;
         }
     }
 
+    /**
+     * Immutable compiled form of worlds.yml
+     */
+    private static class Policy {
+        final Map<String, WorldData> worlds;
+        final Map<String, int[]>     masks = new HashMap<String, int[]>();
+        final WorldData              defaultWorld;
+        final int[]                  defaultMasks;
+        final int                    enabledTypes;
+        /**
+         * Loaded worlds resolved to their masks, filled as worlds are seen.
+         */
+        final Map<UUID, int[]>       resolved = new ConcurrentHashMap<UUID, int[]>();
+
+        Policy(Map<String, WorldData> worlds, WorldData defaultWorld) {
+            this.worlds = worlds;
+            this.defaultWorld = defaultWorld;
+            this.defaultMasks = defaultWorld.compile();
+            int enabled = union(this.defaultMasks);
+            for (Map.Entry<String, WorldData> e : worlds.entrySet()) {
+                int[] m = e.getValue().compile();
+                this.masks.put(e.getKey(), m);
+                enabled |= union(m);
+            }
+            this.enabledTypes = enabled;
+        }
+
+        static int union(int[] masks) {
+            int u = 0;
+            for (int m : masks) {
+                u |= m;
+            }
+            return u;
+        }
+
+        int[] masksFor(World world) {
+            int[] m = this.resolved.get(world.getUID());
+            if (m == null) {
+                m = this.masks.get(world.getName());
+                if (m == null) {
+                    m = this.defaultMasks;
+                }
+                this.resolved.put(world.getUID(), m);
+            }
+            return m;
+        }
+
+        WorldData dataFor(World world) {
+            WorldData d = this.worlds.get(world.getName());
+            return d != null ? d : this.defaultWorld;
+        }
+    }
 
     public WorldManager(ConfigurationSection section){
+        reload(section);
+    }
 
+    /**
+     * Compile a worlds section and replace the current policy with it.
+     *
+     * @param section worlds section of worlds.yml
+     */
+    public final void reload(ConfigurationSection section){
+        Map<String, WorldData> worlds = new HashMap<String, WorldData>();
+        WorldData defaultWorld = new WorldData(true,false,false);
         if(section!=null){
             Set<String> keys = section.getKeys(false);
 
@@ -94,17 +187,46 @@ public class WorldManager {
                 }
             }
         }
+        this.policy = new Policy(worlds, defaultWorld);
+    }
+
+    /**
+     * @return mask of the {@link TrackType}s enabled for some game mode in some world
+     */
+    public int getEnabledTypes(){
+        return this.policy.enabledTypes;
     }
 
+    public boolean shouldTrack(Player player, TrackType trackType){
+        int[] masks = this.policy.masksFor(player.getWorld());
+        return (masks[player.getGameMode().ordinal()] & trackType.getBit()) != 0;
+    }
+
+    /**
+     * Check by worlds.yml name, names without a {@link TrackType} are checked against the lists directly.
+     *
+     * @param player
+     * @param trackType
+     * @return
+     */
     public boolean shouldTrack(Player player, String trackType){
-        if(worlds.containsKey(player.getWorld().getName())){
-            return worlds.get(player.getWorld().getName()).shouldTrack(player, trackType);
+        TrackType type = TrackType.fromName(trackType);
+        if(type != null){
+            return shouldTrack(player, type);
         }
-        return defaultWorld.shouldTrack(player, trackType);
+        return this.policy.dataFor(player.getWorld()).shouldTrack(player, trackType);
 
     }
 
     public void addWorld(String name,boolean s,boolean c,boolean a){
+        Policy current = this.policy;
+        Map<String, WorldData> worlds = new HashMap<String, WorldData>(current.worlds);
         worlds.put(name,new WorldData(s,c,a));
+        this.policy = new Policy(worlds, current.defaultWorld);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event){
+        this.policy.resolved.remove(event.getWorld().getUID());
     }
 }
@@ -1,8 +1,16 @@
 package com.tehbeard.beardstat.bukkit.commands;
 
+import java.util.UUID;
+
+import net.dragonzone.promise.Delegate;
+import net.dragonzone.promise.Promise;
+
+import org.bukkit.Bukkit;
 import org.bukkit.command.CommandExecutor;
 
+import com.tehbeard.beardstat.BeardStatRuntimeException;
 import com.tehbeard.beardstat.bukkit.BukkitPlugin;
+import com.tehbeard.beardstat.containers.EntityStatBlob;
 import com.tehbeard.beardstat.manager.EntityStatManager;
 
 public abstract class BeardStatCommand implements CommandExecutor {
@@ -14,4 +22,61 @@ public abstract class BeardStatCommand implements CommandExecutor {
         this.playerStatManager = playerStatManager;
         this.plugin = plugin;
     }
+
+    /**
+     * Sends a command's reply once its blob is loaded, always called on the main thread.
+     */
+    protected interface BlobReply {
+
+        /**
+         * @param blob the blob, null if the player has no stats
+         */
+        public void send(EntityStatBlob blob);
+    }
+
+    /**
+     * Look up a player's blob without blocking the main thread, then reply from it on the main thread.
+     * Replies run straight away if the blob is already loaded.
+     *
+     * @param uuid
+     * @param reply
+     */
+    protected void withBlob(UUID uuid, final BlobReply reply) {
+        Promise<EntityStatBlob> promise = this.playerStatManager.lookup(uuid);
+        promise.onResolve(new Delegate<Void, Promise<EntityStatBlob>>() {
+
+            @Override
+            public <P extends Promise<EntityStatBlob>> Void invoke(P params) {
+                reply(reply, params.getValue());
+                return null;
+            }
+        });
+        promise.onReject(new Delegate<Void, Promise<EntityStatBlob>>() {
+
+            @Override
+            public <P extends Promise<EntityStatBlob>> Void invoke(P params) {
+                reply(reply, null);
+                return null;
+            }
+        });
+    }
+
+    private void reply(final BlobReply reply, final EntityStatBlob blob) {
+        Runnable send = new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    reply.send(blob);
+                } catch (Exception e) {
+                    BeardStatCommand.this.plugin.handleError(new BeardStatRuntimeException("A command threw an error replying", e, true));
+                }
+            }
+        };
+        if (Bukkit.isPrimaryThread()) {
+            send.run();
+        } else {
+            Bukkit.getScheduler().runTask(this.plugin, send);
+        }
+    }
 }
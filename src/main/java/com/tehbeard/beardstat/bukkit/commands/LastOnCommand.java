@@ -33,22 +33,36 @@ public class LastOnCommand extends BeardStatCommand {
     @Override
     public boolean onCommand(CommandSender sender, Command command, String cmdLabel, String[] args) {
 
-        EntityStatBlob blob = null;
         OfflinePlayer player = sender instanceof Player ? (OfflinePlayer) sender : null;
         if (args.length == 1) {
             player = Bukkit.getOfflinePlayer(args[0]);
         }
-        blob = this.playerStatManager.getPlayer(null, player.getUniqueId(), false);
+        if (player == null) {
+            sender.sendMessage(ChatColor.RED + LanguagePack.getMsg("command.error.noconsole.noargs"));
+            return true;
+        }
+        final CommandSender to = sender;
+        final String named = args.length == 1 ? args[0] : null;
+        final String name = player.getName();
+        withBlob(player.getUniqueId(), new BlobReply() {
+
+            @Override
+            public void send(EntityStatBlob blob) {
+                sendLastOn(to, named != null ? named : name, named != null, blob);
+            }
+        });
         
-        if(blob==null){sender.sendMessage(ChatColor.RED + LanguagePack.getMsg("command.error.noplayer", args[0]));return true;}
+        return true;
+    }
+
+    private void sendLastOn(CommandSender sender, String name, boolean showName, EntityStatBlob blob) {
+        if(blob==null){sender.sendMessage(ChatColor.RED + LanguagePack.getMsg("command.error.noplayer", name));return;}
         
-        if (args.length == 1) {
-            sender.sendMessage(ChatColor.YELLOW + args[0]);
+        if (showName) {
+            sender.sendMessage(ChatColor.YELLOW + name);
         }
         sender.sendMessage(ChatColor.YELLOW + "First on: " + this.playerStatManager.formatStat(FIRSTPLAYEDSTAT, blob.getStat(Refs.DEFAULT_DOMAIN, Refs.GLOBAL_WORLD, PLAYEDCAT, FIRSTPLAYEDSTAT).getValue()));
         sender.sendMessage(ChatColor.YELLOW + "Last on: " + this.playerStatManager.formatStat(LASTPLAYEDSTAT, blob.getStat(Refs.DEFAULT_DOMAIN, Refs.GLOBAL_WORLD, PLAYEDCAT, LASTPLAYEDSTAT).getValue()));
-        
-        return true;
     }
 
         
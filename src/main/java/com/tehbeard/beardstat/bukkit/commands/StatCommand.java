@@ -45,8 +45,6 @@ public class StatCommand extends BeardStatCommand {
             if ((player == null) && (sender instanceof Player)) {
                 player = ((Player) sender);
             }
-            
-            EntityStatBlob blob = this.playerStatManager.getPlayer(null, player.getUniqueId(), false);
 
             // not a player and no player picked? or -h flag? show the help message.
             if ((player == null) || arguments.getFlag("h")) {
@@ -58,77 +56,92 @@ public class StatCommand extends BeardStatCommand {
                 sender.sendMessage("Interactive mode has been removed at this time.");
                 return true;
             }
-            
 
-            if (arguments.getOption("s") != null) {
+            final CommandSender to = sender;
+            final OfflinePlayer target = player;
+            final String statOption = arguments.getOption("s");
+            withBlob(player.getUniqueId(), new BlobReply() {
 
-                Stack<String> stat = new Stack<String>();
-                for (String s : arguments.getOption("s").split("\\:\\:")) {
-                    stat.add(s);
+                @Override
+                public void send(EntityStatBlob blob) {
+                    sendStats(to, target, statOption, blob);
                 }
+            });
 
-                String statistic = !stat.isEmpty() ? stat.pop() : null;
-                String category = !stat.isEmpty() ? stat.pop() : null;
-                String world = !stat.isEmpty() ? stat.pop() : ".*";
-                String domain = !stat.isEmpty() ? stat.pop() : ".*";
+        } catch (Exception e) {
+            this.plugin.handleError(new BeardStatRuntimeException("/stats threw an error", e, true));
+        }
 
-                
-                sender.sendMessage(ChatColor.YELLOW + "=========");
-                if (blob == null) {
-                    sender.sendMessage(LanguagePack.getMsg("command.error.noplayer", player));
-                    return true;
-                }
-                StatVector vector = null;
-                try {
-                    vector = blob.getStats(domain, world, category, statistic, true);
-                } catch (PatternSyntaxException ex) {
-                    sender.sendMessage("Invalid stat entered");
-                    return true;
-                }
+        // TODO: FINISH UP, i think this means check all the options have been added back in?
 
-                if (vector.size() == 0) {
-                    sender.sendMessage(LanguagePack.getMsg("command.error.nostat"));
-                    return true;
-                }
-                if (vector.size() == 1) {
-                    IStat iStat = vector.iterator().next();
+        return true;
+    }
+
+    private void sendStats(CommandSender sender, OfflinePlayer player, String statOption, EntityStatBlob blob) {
+        if (statOption != null) {
 
-                    sender.sendMessage(LanguagePack.getMsg("command.stat.stat",
+            Stack<String> stat = new Stack<String>();
+            for (String s : statOption.split("\\:\\:")) {
+                stat.add(s);
+            }
+
+            String statistic = !stat.isEmpty() ? stat.pop() : null;
+            String category = !stat.isEmpty() ? stat.pop() : null;
+            String world = !stat.isEmpty() ? stat.pop() : ".*";
+            String domain = !stat.isEmpty() ? stat.pop() : ".*";
+
+            
+            sender.sendMessage(ChatColor.YELLOW + "=========");
+            if (blob == null) {
+                sender.sendMessage(LanguagePack.getMsg("command.error.noplayer", player));
+                return;
+            }
+            StatVector vector = null;
+            try {
+                vector = blob.getStats(domain, world, category, statistic, true);
+            } catch (PatternSyntaxException ex) {
+                sender.sendMessage("Invalid stat entered");
+                return;
+            }
+
+            if (vector.size() == 0) {
+                sender.sendMessage(LanguagePack.getMsg("command.error.nostat"));
+                return;
+            }
+            if (vector.size() == 1) {
+                IStat iStat = vector.iterator().next();
+
+                sender.sendMessage(LanguagePack.getMsg("command.stat.stat",
+                        playerStatManager.getLocalizedStatisticName(iStat.getStatistic()),
+                        playerStatManager.formatStat(iStat.getStatistic(), iStat.getValue())));
+                return;
+            }
+            if (vector.size() > 1) {
+                sender.sendMessage(LanguagePack.getMsg("command.stat.stat",
+                        playerStatManager.getLocalizedStatisticName(vector.getStatistic()) + " total",
+                        playerStatManager.formatStat(vector.getStatistic(), vector.getValue())));
+                // command.stat.stat.world
+                for(IStat iStat : vector) {
+
+                    sender.sendMessage(LanguagePack.getMsg("command.stat.stat.world", iStat.getWorld(),
+                            iStat.getCategory(),
                             playerStatManager.getLocalizedStatisticName(iStat.getStatistic()),
                             playerStatManager.formatStat(iStat.getStatistic(), iStat.getValue())));
-                    return true;
-                }
-                if (vector.size() > 1) {
-                    sender.sendMessage(LanguagePack.getMsg("command.stat.stat",
-                            playerStatManager.getLocalizedStatisticName(vector.getStatistic()) + " total",
-                            playerStatManager.formatStat(vector.getStatistic(), vector.getValue())));
-                    // command.stat.stat.world
-                    for(IStat iStat : vector) {
-
-                        sender.sendMessage(LanguagePack.getMsg("command.stat.stat.world", iStat.getWorld(),
-                                iStat.getCategory(),
-                                playerStatManager.getLocalizedStatisticName(iStat.getStatistic()),
-                                playerStatManager.formatStat(iStat.getStatistic(), iStat.getValue())));
-                        
-                    }
-                    return true;
-
+                    
                 }
 
-            } else {
-                //TODO - Swap to API call instead?
-                sender.sendMessage(ChatColor.YELLOW + "=========");
-                StatPageCommand.sendPages("default",sender,blob);
+            }
 
+        } else {
+            //TODO - Swap to API call instead?
+            sender.sendMessage(ChatColor.YELLOW + "=========");
+            if (blob == null) {
+                sender.sendMessage(LanguagePack.getMsg("command.error.noplayer", player));
+                return;
             }
+            StatPageCommand.sendPages("default",sender,blob);
 
-        } catch (Exception e) {
-            this.plugin.handleError(new BeardStatRuntimeException("/stats threw an error", e, true));
         }
-
-        // TODO: FINISH UP, i think this means check all the options have been added back in?
-
-        return true;
     }
 
     public static void sendHelpMessage(CommandSender sender) {
@@ -97,19 +97,19 @@ public class StatPageCommand extends BeardStatCommand {
     @Override
     public boolean onCommand(CommandSender sender, Command cmd, String lbl, String[] args) {
         try {
-            EntityStatBlob blob = null;
+            OfflinePlayer player = null;
             
             //Find the player to use
             if(sender instanceof Player){
-                blob = playerStatManager.getPlayer(null, ((Player)sender).getUniqueId(), false);
+                player = (Player)sender;
             }
-            if(blob == null && args.length != 2){
+            if(player == null && args.length != 2){
                 return false;
             }
             
             String page = null;
             if(args.length == 2){
-                blob = playerStatManager.getPlayer(null, Bukkit.getOfflinePlayer(args[0]).getUniqueId(), false);
+                player = Bukkit.getOfflinePlayer(args[0]);
                 page = args[1];
             }
             
@@ -120,7 +120,20 @@ public class StatPageCommand extends BeardStatCommand {
             if(page == null){
                 return false;
             }
-            sendPages(page, sender, blob);
+            final CommandSender to = sender;
+            final String name = player.getName();
+            final String pageName = page;
+            withBlob(player.getUniqueId(), new BlobReply() {
+
+                @Override
+                public void send(EntityStatBlob blob) {
+                    if(blob == null){
+                        to.sendMessage(LanguagePack.getMsg("command.error.noplayer", name));
+                        return;
+                    }
+                    sendPages(pageName, to, blob);
+                }
+            });
             return true;
         } catch (Exception e) {
             this.plugin.handleError(new BeardStatRuntimeException("/statpage threw an error", e, true));
@@ -0,0 +1,29 @@
+package com.tehbeard.beardstat.bukkit.commands;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+import com.tehbeard.beardstat.LanguagePack;
+import com.tehbeard.beardstat.bukkit.BukkitPlugin;
+import com.tehbeard.beardstat.manager.EntityStatManager;
+
+/**
+ * /statreload - Reload worlds.yml without restarting the plugin
+ *
+ * @author James
+ *
+ */
+public class StatReloadCommand extends BeardStatCommand {
+
+    public StatReloadCommand(EntityStatManager playerStatManager, BukkitPlugin plugin) {
+        super(playerStatManager, plugin);
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String cmdLabel, String[] args) {
+        this.plugin.reloadWorlds();
+        sender.sendMessage(ChatColor.GREEN + LanguagePack.getMsg("command.reload.worlds"));
+        return true;
+    }
+}
@@ -34,9 +34,6 @@ public class playedCommand extends BeardStatCommand {
     public boolean onCommand(CommandSender sender, Command command, String cmdLabel, String[] args) {
         try {
 
-            int seconds = 0;
-            EntityStatBlob blob;
-
             // If sender is a player, default to them
             OfflinePlayer selectedPlayer = (sender instanceof OfflinePlayer) ? (OfflinePlayer) sender : null;
 
@@ -53,26 +50,15 @@ public class playedCommand extends BeardStatCommand {
             }
 
             // Grab player blob and format out stat
-            blob = this.playerStatManager.getPlayer(null, selectedPlayer.getUniqueId(), false);
-            if (blob == null) {
-                sender.sendMessage(ChatColor.RED + LanguagePack.getMsg("command.error.noplayer", args[0]));
-                return true;
-            }
-            StatVector vector = blob.getStats(Refs.DEFAULT_DOMAIN, "*", "stats", "playedfor");
-            seconds = vector.getValue();
-            
-            //Only get record if player is online.
-            ManagerRecord onlineTimeRecord = OnlineTimeManager.getRecord(selectedPlayer.getName());
-            if(onlineTimeRecord != null){
-                seconds += onlineTimeRecord.sessionTime();
-            }
-            
-            sender.sendMessage(getPlayedString(seconds) + " total");
+            final CommandSender to = sender;
+            final String name = selectedPlayer.getName();
+            withBlob(selectedPlayer.getUniqueId(), new BlobReply() {
 
-            for (IStat stat : vector) {
-                sender.sendMessage(LanguagePack.getMsg("command.stat.stat", stat.getWorld(),
-                        getPlayedString(stat.getValue())));
-            }
+                @Override
+                public void send(EntityStatBlob blob) {
+                    sendPlayed(to, name, blob);
+                }
+            });
         } catch (Exception e) {
             this.plugin.handleError(new BeardStatRuntimeException("An error occured running /played", e, true));
         }
@@ -80,6 +66,28 @@ public class playedCommand extends BeardStatCommand {
         return true;
     }
 
+    private void sendPlayed(CommandSender sender, String name, EntityStatBlob blob) {
+        if (blob == null) {
+            sender.sendMessage(ChatColor.RED + LanguagePack.getMsg("command.error.noplayer", name));
+            return;
+        }
+        StatVector vector = blob.getStats(Refs.DEFAULT_DOMAIN, "*", "stats", "playedfor");
+        int seconds = vector.getValue();
+        
+        //Only get record if player is online.
+        ManagerRecord onlineTimeRecord = OnlineTimeManager.getRecord(name);
+        if(onlineTimeRecord != null){
+            seconds += onlineTimeRecord.sessionTime();
+        }
+        
+        sender.sendMessage(getPlayedString(seconds) + " total");
+
+        for (IStat stat : vector) {
+            sender.sendMessage(LanguagePack.getMsg("command.stat.stat", stat.getWorld(),
+                    getPlayedString(stat.getValue())));
+        }
+    }
+
     public String getPlayedString(int seconds) {
 
         if (seconds > 0) {
@@ -6,7 +6,7 @@ import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
 
 import com.tehbeard.beardstat.bukkit.BukkitPlugin;
-import com.tehbeard.beardstat.Refs;
+import com.tehbeard.beardstat.TrackType;
 import com.tehbeard.beardstat.manager.EntityStatManager;
 import com.tehbeard.beardstat.bukkit.utils.StatUtils;
 
@@ -16,9 +16,10 @@ public class StatBlockListener extends StatListener {
         super(playerStatManager, plugin);
     }
 
+    @TrackedBy(TrackType.BLOCK_PLACE)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onBlockPlace(BlockPlaceEvent event) {
-        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(), Refs.TRACK_BLOCK_PLACE)) {
+        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(), TrackType.BLOCK_PLACE)) {
             return;
         }
         StatUtils.instance.modifyStatPlayer(event.getPlayer(), "stats", "totalblockcreate", 1);
@@ -26,9 +27,10 @@ public class StatBlockListener extends StatListener {
 
     }
 
+    @TrackedBy(TrackType.BLOCK_BREAK)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onBlockBreak(BlockBreakEvent event) {
-        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(), Refs.TRACK_BLOCK_BREAK)) {
+        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(), TrackType.BLOCK_BREAK)) {
             return;
         }
 
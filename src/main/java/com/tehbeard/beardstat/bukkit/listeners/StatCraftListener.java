@@ -9,7 +9,7 @@ import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
 import com.tehbeard.beardstat.bukkit.BukkitPlugin;
-import com.tehbeard.beardstat.Refs;
+import com.tehbeard.beardstat.TrackType;
 import com.tehbeard.beardstat.manager.EntityStatManager;
 import com.tehbeard.beardstat.bukkit.utils.StatUtils;
 
@@ -19,9 +19,10 @@ public class StatCraftListener extends StatListener {
         super( playerStatManager, plugin);
     }
 
+    @TrackedBy(TrackType.ITEM_CRAFT)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onCraftItem(CraftItemEvent event) {
-        if (event.isCancelled() || !shouldTrackPlayer((Player) event.getWhoClicked(),Refs.TRACK_ITEM_CRAFT)) {
+        if (event.isCancelled() || !shouldTrackPlayer((Player) event.getWhoClicked(),TrackType.ITEM_CRAFT)) {
             return;
         }
 
@@ -22,7 +22,7 @@ import org.bukkit.projectiles.BlockProjectileSource;
 import org.bukkit.projectiles.ProjectileSource;
 
 import com.tehbeard.beardstat.bukkit.BukkitPlugin;
-import com.tehbeard.beardstat.Refs;
+import com.tehbeard.beardstat.TrackType;
 import com.tehbeard.beardstat.manager.EntityStatManager;
 import com.tehbeard.beardstat.bukkit.utils.StatUtils;
 
@@ -34,7 +34,10 @@ public class StatEntityListener extends StatListener {
 
     private final String[] DAMAGELBLS = { "damagedealt", "damagetaken" };
     private final String[] KDLBLS     = { "kills", "deaths" };
+    private final TrackType[] DAMAGETRACK = { TrackType.ENTITY_DAMAGEDEALT, TrackType.ENTITY_DAMAGETAKEN };
+    private final TrackType[] KDTRACK     = { TrackType.ENTITY_KILLS, TrackType.ENTITY_DEATHS };
 
+    @TrackedBy({TrackType.ENTITY_DAMAGEDEALT, TrackType.ENTITY_DAMAGETAKEN})
     @EventHandler(priority = EventPriority.MONITOR)
     public void onEntityDamage(EntityDamageEvent event) {
 
@@ -42,10 +45,11 @@ public class StatEntityListener extends StatListener {
             return;
         }
 
-        processEntityDamage(event, this.DAMAGELBLS, false);
+        processEntityDamage(event, this.DAMAGELBLS, this.DAMAGETRACK, false);
 
     }
 
+    @TrackedBy({TrackType.ENTITY_KILLS, TrackType.ENTITY_DEATHS})
     @EventHandler(priority = EventPriority.MONITOR)
     public void onEntityDeath(EntityDeathEvent event) {
 
@@ -53,7 +57,7 @@ public class StatEntityListener extends StatListener {
 
         EntityDamageEvent lastCause = event.getEntity().getLastDamageCause();
         if (lastCause != null) {
-            processEntityDamage(lastCause, this.KDLBLS, true);
+            processEntityDamage(lastCause, this.KDLBLS, this.KDTRACK, true);
         }
 
     }
@@ -64,7 +68,7 @@ public class StatEntityListener extends StatListener {
      * @param event
      * @param category
      */
-    private void processEntityDamage(EntityDamageEvent event, String[] category, boolean forceOne) {
+    private void processEntityDamage(EntityDamageEvent event, String[] category, TrackType[] track, boolean forceOne) {
         // Initialise base stats
         Entity attacked = event.getEntity();
         DamageCause cause = event.getCause();
@@ -107,7 +111,7 @@ public class StatEntityListener extends StatListener {
             return;
         }// kill if no player involved
 
-        if (event.isCancelled() || !shouldTrackPlayer(player, Refs.TRACK_ENTITY_PREFIX + category[idx])) {
+        if (event.isCancelled() || !shouldTrackPlayer(player, track[idx])) {
             return;
         }
 
@@ -139,6 +143,7 @@ public class StatEntityListener extends StatListener {
         }
     }
 
+    @TrackedBy(TrackType.ENTITY_HEAL)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onEntityRegainHealth(EntityRegainHealthEvent event) {
 
@@ -148,7 +153,7 @@ public class StatEntityListener extends StatListener {
             RegainReason reason = event.getRegainReason();
             Player player = (Player) event.getEntity();
 
-            if (!shouldTrackPlayer(player, Refs.TRACK_ENTITY_HEAL)) {
+            if (!shouldTrackPlayer(player, TrackType.ENTITY_HEAL)) {
                 return;
             }
 
@@ -159,10 +164,11 @@ public class StatEntityListener extends StatListener {
         }
     }
 
+    @TrackedBy(TrackType.ENTITY_TAME)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onEntityTame(EntityTameEvent event) {
         if ((event.isCancelled() == false) && (event.getOwner() instanceof Player)) {
-            if (event.isCancelled() || !shouldTrackPlayer((Player) event.getOwner(),Refs.TRACK_ENTITY_TAME)) {
+            if (event.isCancelled() || !shouldTrackPlayer((Player) event.getOwner(),TrackType.ENTITY_TAME)) {
                 return;
             }
 
@@ -170,6 +176,7 @@ public class StatEntityListener extends StatListener {
         }
     }
 
+    @TrackedBy(TrackType.ENTITY_POTION)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPotionSplash(PotionSplashEvent event) {
 
@@ -183,7 +190,7 @@ public class StatEntityListener extends StatListener {
             if (e instanceof Player) {
                 Player p = (Player) e;
 
-                if (!shouldTrackPlayer(p,Refs.TRACK_ENTITY_POTION)) {
+                if (!shouldTrackPlayer(p,TrackType.ENTITY_POTION)) {
                     continue;
                 }
 
@@ -196,6 +203,7 @@ public class StatEntityListener extends StatListener {
         }
     }
 
+    @TrackedBy(TrackType.ENTITY_BOW)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onBowShoot(EntityShootBowEvent event) {
 
@@ -206,7 +214,7 @@ public class StatEntityListener extends StatListener {
         if (event.getEntity() instanceof Player) {
             Player player = (Player) event.getEntity();
 
-            if (!shouldTrackPlayer(player, Refs.TRACK_ENTITY_BOW)) {
+            if (!shouldTrackPlayer(player, TrackType.ENTITY_BOW)) {
                 return;
             }
 
@@ -3,6 +3,7 @@ package com.tehbeard.beardstat.bukkit.listeners;
 import org.bukkit.entity.Player;
 import org.bukkit.event.Listener;
 
+import com.tehbeard.beardstat.TrackType;
 import com.tehbeard.beardstat.bukkit.BukkitPlugin;
 import com.tehbeard.beardstat.manager.EntityStatManager;
 
@@ -27,6 +28,10 @@ public abstract class StatListener implements Listener {
         this.plugin = plugin;
     }
 
+    protected boolean shouldTrackPlayer(Player player, TrackType trackType) {
+        return BukkitPlugin.worldManager.shouldTrack(player, trackType);
+    }
+
     protected boolean shouldTrackPlayer(Player player, String trackType) {
         return BukkitPlugin.worldManager.shouldTrack(player, trackType);
     }
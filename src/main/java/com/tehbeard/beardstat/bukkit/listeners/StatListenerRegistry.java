@@ -0,0 +1,105 @@
+package com.tehbeard.beardstat.bukkit.listeners;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+
+import com.tehbeard.beardstat.TrackType;
+
+/**
+ * Registers the event handlers of the stat listeners, skipping handlers marked {@link TrackedBy}
+ * whose track types are not enabled anywhere, so Bukkit does not dispatch those events to us at all.
+ * Call {@link #register(int)} again after the world config changes.
+ *
+ * @author James
+ */
+public class StatListenerRegistry {
+
+    private final Plugin         plugin;
+    private final List<Listener> listeners = new ArrayList<Listener>();
+
+    public StatListenerRegistry(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    public void add(Listener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Unregister every handler of the managed listeners, then register those that can record a stat.
+     *
+     * @param enabledTypes mask of {@link TrackType} bits enabled in at least one world
+     * @return number of handlers registered
+     */
+    public int register(int enabledTypes) {
+        int count = 0;
+        for (Listener listener : this.listeners) {
+            HandlerList.unregisterAll(listener);
+            for (Method method : listener.getClass().getMethods()) {
+                EventHandler handler = method.getAnnotation(EventHandler.class);
+                if (handler == null || method.getParameterTypes().length != 1
+                        || !Event.class.isAssignableFrom(method.getParameterTypes()[0])) {
+                    continue;
+                }
+                if (!enabled(method.getAnnotation(TrackedBy.class), enabledTypes)) {
+                    continue;
+                }
+                Class<? extends Event> eventClass = method.getParameterTypes()[0].asSubclass(Event.class);
+                this.plugin.getServer().getPluginManager().registerEvent(
+                        eventClass, listener, handler.priority(), new MethodExecutor(method, eventClass), this.plugin, handler.ignoreCancelled());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean enabled(TrackedBy trackedBy, int enabledTypes) {
+        if (trackedBy == null) {
+            return true;
+        }
+        for (TrackType type : trackedBy.value()) {
+            if ((enabledTypes & type.getBit()) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Calls a handler method, skips events of sibling classes that share the handler list.
+     */
+    private static class MethodExecutor implements EventExecutor {
+
+        private final Method                 method;
+        private final Class<? extends Event> eventClass;
+
+        MethodExecutor(Method method, Class<? extends Event> eventClass) {
+            this.method = method;
+            this.eventClass = eventClass;
+        }
+
+        @Override
+        public void execute(Listener listener, Event event) throws EventException {
+            if (!this.eventClass.isInstance(event)) {
+                return;
+            }
+            try {
+                this.method.invoke(listener, event);
+            } catch (InvocationTargetException e) {
+                throw new EventException(e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new EventException(e);
+            }
+        }
+    }
+}
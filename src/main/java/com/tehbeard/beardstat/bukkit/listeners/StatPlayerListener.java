@@ -6,7 +6,6 @@ import java.util.Date;
 import net.dragonzone.promise.Delegate;
 import net.dragonzone.promise.Promise;
 
-import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Cow;
@@ -23,6 +22,7 @@ import org.bukkit.event.block.Action;
 import org.bukkit.event.enchantment.EnchantItemEvent;
 import org.bukkit.event.entity.PlayerLeashEntityEvent;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerAnimationEvent;
 import org.bukkit.event.player.PlayerAnimationType;
 import org.bukkit.event.player.PlayerBucketEmptyEvent;
@@ -31,12 +31,14 @@ import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerDropItemEvent;
 import org.bukkit.event.player.PlayerExpChangeEvent;
 import org.bukkit.event.player.PlayerFishEvent;
+import org.bukkit.event.player.PlayerGameModeChangeEvent;
 import org.bukkit.event.player.PlayerInteractEntityEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.event.player.PlayerItemConsumeEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerKickEvent;
 import org.bukkit.event.player.PlayerLevelChangeEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerMoveEvent;
 import org.bukkit.event.player.PlayerPickupItemEvent;
 import org.bukkit.event.player.PlayerPortalEvent;
@@ -51,7 +53,9 @@ import org.bukkit.potion.PotionEffect;
 
 import com.tehbeard.beardstat.bukkit.BukkitPlugin;
 import com.tehbeard.beardstat.Refs;
+import com.tehbeard.beardstat.TrackType;
 import com.tehbeard.beardstat.containers.EntityStatBlob;
+import com.tehbeard.beardstat.containers.StatKey;
 import com.tehbeard.beardstat.manager.EntityStatManager;
 import com.tehbeard.beardstat.manager.OnlineTimeManager;
 import com.tehbeard.beardstat.manager.OnlineTimeManager.ManagerRecord;
@@ -65,13 +69,16 @@ import com.tehbeard.beardstat.bukkit.utils.StatUtils;
  */
 public class StatPlayerListener extends StatListener {
 
+    private static final StatKey FIRST_LOGIN = new StatKey(Refs.DEFAULT_DOMAIN, Refs.GLOBAL_WORLD, "stats", "firstlogin");
+
     public StatPlayerListener(EntityStatManager playerStatManager, BukkitPlugin plugin) {
         super(playerStatManager, plugin);
     }
 
+    @TrackedBy(TrackType.PLAYER_ARM)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerAnimation(PlayerAnimationEvent event) {
-        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(),Refs.TRACK_PLAYER_ARM)) {
+        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(),TrackType.PLAYER_ARM)) {
             return;
         }
 
@@ -81,22 +88,39 @@ public class StatPlayerListener extends StatListener {
 
     }
 
+    /**
+     * Start loading the blob while the player logs in, so it is usually ready before they join.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            getPlayerStatManager().prefetch(event.getName(), event.getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerLogin(PlayerLoginEvent event) {
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            getPlayerStatManager().cancelPrefetch(event.getPlayer().getUniqueId());
+        }
+    }
+
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerJoin(final PlayerJoinEvent event) {
+        Promise<EntityStatBlob> blob = getPlayerStatManager().prefetchJoined(event.getPlayer().getName(), event.getPlayer().getUniqueId());
         StatUtils.instance.modifyStatPlayer(event.getPlayer(), "stats", "login",1);
         StatUtils.instance.set(event.getPlayer(), Refs.GLOBAL_WORLD, "stats", "lastlogin", (int) (System.currentTimeMillis() / 1000L));
         StatUtils.instance.modifyStatPlayer(event.getPlayer(), "stats", "lastlogin",
                 (int) (System.currentTimeMillis() / 1000L));
 
         //Special case for first join
-        getPlayerStatManager().getPlayer(event.getPlayer().getName(), event.getPlayer().getUniqueId())
-        .onResolve(new Delegate<Void, Promise<EntityStatBlob>>() {
+        blob.onResolve(new Delegate<Void, Promise<EntityStatBlob>>() {
 
             @Override
             public <P extends Promise<EntityStatBlob>> Void invoke(P params) {
 
-                if (!params.getValue().hasStat(Refs.DEFAULT_DOMAIN, Refs.GLOBAL_WORLD, "stats", "firstlogin")) {
-                    params.getValue().getStat(Refs.DEFAULT_DOMAIN, Refs.GLOBAL_WORLD, "stats", "firstlogin")
+                if (!params.getValue().hasStat(FIRST_LOGIN)) {
+                    params.getValue().getStat(FIRST_LOGIN)
                     .setValue((int) (event.getPlayer().getFirstPlayed() / 1000L));
 
                 }
@@ -120,18 +144,20 @@ public class StatPlayerListener extends StatListener {
         }
     }
 
+    @TrackedBy(TrackType.ITEM_DROP)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerDropItem(PlayerDropItemEvent event) {
-        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(), Refs.TRACK_ITEM_DROP)) {
+        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(), TrackType.ITEM_DROP)) {
             return;
         }
         StatUtils.instance.modifyStatItem(event.getPlayer(), "itemdrop", event.getItemDrop().getItemStack(), event.getItemDrop().getItemStack().getAmount());
 
     }
 
+    @TrackedBy(TrackType.PLAYER_FISH)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerFish(PlayerFishEvent event) {
-        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(),Refs.TRACK_PLAYER_FISH)) {
+        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(),TrackType.PLAYER_FISH)) {
             return;
         }
 
@@ -170,6 +196,7 @@ public class StatPlayerListener extends StatListener {
             StatUtils.instance.modifyStatPlayer(event.getPlayer(), "stats", "lastlogout", (int) (System.currentTimeMillis() / 1000L));
             StatUtils.instance.set(event.getPlayer(), Refs.GLOBAL_WORLD, "stats", "lastlogout", (int) (System.currentTimeMillis() / 1000L));
             addTimeOnlineAndWipe(event.getPlayer());
+            getPlugin().getMovementTracker().remove(event.getPlayer());
         }
 
     }
@@ -180,37 +207,35 @@ public class StatPlayerListener extends StatListener {
         StatUtils.instance.modifyStatPlayer(event.getPlayer(), "stats", "lastlogout",
                 (int) ((new Date()).getTime() / 1000L));
         addTimeOnlineAndWipe(event.getPlayer());
+        getPlugin().getMovementTracker().remove(event.getPlayer());
 
     }
 
+    @TrackedBy(TrackType.PLAYER_MOVE)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerMove(PlayerMoveEvent event) {
-        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(),Refs.TRACK_PLAYER_MOVE)) {
+        if (event.isCancelled()) {
             return;
         }
 
-        if (((event.getTo().getBlockX() != event.getFrom().getBlockX())
-                || (event.getTo().getBlockY() != event.getFrom().getBlockY()) || (event.getTo().getBlockZ() != event
-                .getFrom().getBlockZ()))) {
-
-            Location from;
-            Location to;
-
-            from = event.getFrom();
-            to = event.getTo();
-
-            if (from.getWorld().equals(to.getWorld())) {
-                final double distance = from.distance(to);
-                if (distance < 8) {
-                    StatUtils.instance.modifyStatPlayer(event.getPlayer(), "stats", "move", (int) Math.ceil(distance));
-                }
-            }
+        //Every move counts, including those within a block, only turning on the spot is skipped
+        if (event.getTo().getX() != event.getFrom().getX()
+                || event.getTo().getY() != event.getFrom().getY() || event.getTo().getZ() != event.getFrom().getZ()) {
+            //Tracking check is cached by the tracker
+            getPlugin().getMovementTracker().walk(event.getPlayer(), event.getFrom(), event.getTo(), 8);
         }
     }
 
+    @TrackedBy(TrackType.PLAYER_MOVE)
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onGameModeChange(PlayerGameModeChangeEvent event) {
+        getPlugin().getMovementTracker().invalidate(event.getPlayer());
+    }
+
+    @TrackedBy(TrackType.ITEM_PICKUP)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerPickupItem(PlayerPickupItemEvent event) {
-        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(), Refs.TRACK_ITEM_PICKUP)) {
+        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(), TrackType.ITEM_PICKUP)) {
             return;
         }
 
@@ -237,17 +262,19 @@ public class StatPlayerListener extends StatListener {
         }
     }
 
+    @TrackedBy(TrackType.PLAYER_BUCKET)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerBucketFill(PlayerBucketFillEvent event) {
-        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(),Refs.TRACK_PLAYER_BUCKET)) {
+        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(),TrackType.PLAYER_BUCKET)) {
             return;
         }
         StatUtils.instance.modifyStatPlayer(event.getPlayer(), "stats", "fill" + event.getBucket().toString().toLowerCase().replace("_", ""), 1);
     }
 
+    @TrackedBy(TrackType.PLAYER_BUCKET)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerBucketEmpty(PlayerBucketEmptyEvent event) {
-        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(),Refs.TRACK_PLAYER_BUCKET)) {
+        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(),TrackType.PLAYER_BUCKET)) {
             return;
         }
 
@@ -255,9 +282,10 @@ public class StatPlayerListener extends StatListener {
 
     }
 
+    @TrackedBy(TrackType.ENTITY_INTERACT)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerInteractEntity(PlayerInteractEntityEvent event) {
-        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(),Refs.TRACK_ENTITY_INTERACT)) {
+        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(),TrackType.ENTITY_INTERACT)) {
             return;
         }
 
@@ -301,9 +329,10 @@ public class StatPlayerListener extends StatListener {
 
     }
 
+    @TrackedBy(TrackType.ENTITY_SHEAR)
     @EventHandler(priority = EventPriority.MONITOR)
     public void shearEvent(PlayerShearEntityEvent event) {
-        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(), Refs.TRACK_ENTITY_SHEAR)) {
+        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(), TrackType.ENTITY_SHEAR)) {
             return;
         }
 
@@ -318,9 +347,10 @@ public class StatPlayerListener extends StatListener {
     }
 
     @SuppressWarnings("deprecation")
+    @TrackedBy(TrackType.PLAYER_USE)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerInteract(PlayerInteractEvent event) {
-        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(),Refs.TRACK_PLAYER_USE)) {
+        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(),TrackType.PLAYER_USE)) {
             return;
         }
 
@@ -360,9 +390,10 @@ public class StatPlayerListener extends StatListener {
         }
     }
 
+    @TrackedBy(TrackType.PLAYER_EXP)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerExp(PlayerExpChangeEvent event) {
-        if (!shouldTrackPlayer(event.getPlayer(),Refs.TRACK_PLAYER_EXP)) {
+        if (!shouldTrackPlayer(event.getPlayer(),TrackType.PLAYER_EXP)) {
             return;
         }
 
@@ -372,9 +403,10 @@ public class StatPlayerListener extends StatListener {
 
     }
 
+    @TrackedBy(TrackType.PLAYER_EXP)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerExpLevel(PlayerLevelChangeEvent event) {
-        if (!shouldTrackPlayer(event.getPlayer(), Refs.TRACK_PLAYER_EXP)) {
+        if (!shouldTrackPlayer(event.getPlayer(), TrackType.PLAYER_EXP)) {
             return;
         }
         StatUtils.instance.setPlayerStat(event.getPlayer(),  "exp", "currentlvl", event.getNewLevel());
@@ -385,11 +417,12 @@ public class StatPlayerListener extends StatListener {
 
     }
 
+    @TrackedBy(TrackType.PLAYER_EXP)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onEnchant(EnchantItemEvent event) {
         Player player = event.getEnchanter();
 
-        if (event.isCancelled() || !shouldTrackPlayer(event.getEnchanter(), Refs.TRACK_PLAYER_EXP)) {
+        if (event.isCancelled() || !shouldTrackPlayer(event.getEnchanter(), TrackType.PLAYER_EXP)) {
             return;
         }
 
@@ -415,17 +448,19 @@ public class StatPlayerListener extends StatListener {
 
     @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
     public void worldJump(PlayerChangedWorldEvent event) {
-        if(shouldTrackPlayer(event.getPlayer(), Refs.TRACK_PLAYER_TIME)){
+        getPlugin().getMovementTracker().invalidate(event.getPlayer());
+        if(shouldTrackPlayer(event.getPlayer(), TrackType.PLAYER_TIME)){
             addTimeOnlineAndWipe(event.getPlayer());
         }
         OnlineTimeManager.setRecord(event.getPlayer().getName(), event.getPlayer().getWorld().getName());
     }
 
+    @TrackedBy(TrackType.PLAYER_CONSUME)
     @EventHandler(priority = EventPriority.MONITOR)
     public void onNom(PlayerItemConsumeEvent event) {
         Player player = event.getPlayer();
 
-        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(), Refs.TRACK_PLAYER_CONSUME)) {
+        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(), TrackType.PLAYER_CONSUME)) {
             return;
         }
 
@@ -458,9 +493,10 @@ public class StatPlayerListener extends StatListener {
 
     }
 
+    @TrackedBy(TrackType.ENTITY_INTERACT)
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onLeash(PlayerLeashEntityEvent event) {
-        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(), Refs.TRACK_ENTITY_INTERACT)) {
+        if (event.isCancelled() || !shouldTrackPlayer(event.getPlayer(), TrackType.ENTITY_INTERACT)) {
             return;
         }
         Player player = event.getPlayer();
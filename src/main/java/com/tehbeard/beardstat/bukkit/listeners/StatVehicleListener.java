@@ -1,15 +1,14 @@
 package com.tehbeard.beardstat.bukkit.listeners;
 
-import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.vehicle.VehicleMoveEvent;
 
 import com.tehbeard.beardstat.bukkit.BukkitPlugin;
-import com.tehbeard.beardstat.Refs;
+import com.tehbeard.beardstat.TrackType;
+import com.tehbeard.beardstat.bukkit.identifier.IdentifierService;
 import com.tehbeard.beardstat.manager.EntityStatManager;
-import com.tehbeard.beardstat.bukkit.utils.StatUtils;
 
 public class StatVehicleListener extends StatListener {
 
@@ -17,31 +16,21 @@ public class StatVehicleListener extends StatListener {
         super(playerStatManager, plugin);
     }
 
+    @TrackedBy(TrackType.PLAYER_MOVE)
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onVehicleMove(VehicleMoveEvent event) {
 
-        if (((event.getTo().getBlockX() != event.getFrom().getBlockX())
-                || (event.getTo().getBlockY() != event.getFrom().getBlockY()) || (event.getTo().getBlockZ() != event
-                .getFrom().getBlockZ()))) {
+        //Every move counts, including those within a block
+        if (event.getTo().getX() != event.getFrom().getX()
+                || event.getTo().getY() != event.getFrom().getY() || event.getTo().getZ() != event.getFrom().getZ()) {
 
-            Location from, to;
             Player player = (event.getVehicle().getPassenger() instanceof Player ? (Player) event.getVehicle()
                     .getPassenger() : null);
             if (player == null) {
                 return;
             }
 
-            if (!shouldTrackPlayer(player, Refs.TRACK_PLAYER_MOVE)) {
-                return;
-            }
-
-            from = event.getFrom();
-            to = event.getTo();
-            if (from.getWorld().equals(to.getWorld())) {
-                if (from.distance(to) < 10) {
-                    StatUtils.instance.modifyStatEntity(player, "vehicle", event.getVehicle(), (int) Math.ceil(from.distance(to)));
-                }
-            }
+            getPlugin().getMovementTracker().ride(player, IdentifierService.getIdForEntity(event.getVehicle()), event.getFrom(), event.getTo(), 10);
         }
 
     }
@@ -0,0 +1,22 @@
+package com.tehbeard.beardstat.bukkit.listeners;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.tehbeard.beardstat.TrackType;
+
+/**
+ * Marks an event handler that only records stats for the given track types.
+ * The handler is not registered while worlds.yml disables all of them in every world.
+ * Handlers without this annotation are always registered.
+ *
+ * @author James
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface TrackedBy {
+
+    TrackType[] value();
+}
@@ -0,0 +1,181 @@
+package com.tehbeard.beardstat.bukkit.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import com.tehbeard.beardstat.TrackType;
+import com.tehbeard.beardstat.bukkit.BukkitPlugin;
+
+/**
+ * Accumulates walking and vehicle distance per player from every move, including moves within a block,
+ * and commits whole blocks to the stats when run (once a second from the scheduler), on world change and on quit. The fraction left over is carried to the next commit,
+ * and dropped when the player leaves.
+ * Movement events arrive several times a tick per player, this keeps them down to a little arithmetic.
+ *
+ * Must only be used from the main thread.
+ *
+ * @author James
+ *
+ */
+public class MovementTracker implements Runnable {
+
+    private static final int TRACK_UNKNOWN = -1;
+    private static final int TRACK_NO      = 0;
+    private static final int TRACK_YES     = 1;
+
+    private static class Record {
+        String world;
+        double walked        = 0;
+        String vehicle       = null;
+        double vehicleMoved  = 0;
+        int    track         = TRACK_UNKNOWN;
+    }
+
+    private final Map<UUID, Record> records = new HashMap<UUID, Record>();
+
+    /**
+     * Record a walking move.
+     *
+     * @param player
+     * @param from
+     * @param to
+     * @param maxDistance moves this long or longer are ignored
+     */
+    public void walk(Player player, Location from, Location to, double maxDistance) {
+        double distSq = distanceSquared(from, to, maxDistance);
+        if (distSq <= 0) {
+            return;
+        }
+        Record record = prepare(player, from);
+        if (record != null) {
+            record.walked += Math.sqrt(distSq);
+        }
+    }
+
+    /**
+     * Record a move made while riding a vehicle.
+     *
+     * @param player
+     * @param vehicle identifier of the vehicle
+     * @param from
+     * @param to
+     * @param maxDistance moves this long or longer are ignored
+     */
+    public void ride(Player player, String vehicle, Location from, Location to, double maxDistance) {
+        double distSq = distanceSquared(from, to, maxDistance);
+        if (distSq <= 0) {
+            return;
+        }
+        Record record = prepare(player, from);
+        if (record == null) {
+            return;
+        }
+        if (!vehicle.equals(record.vehicle)) {
+            commitVehicle(player, record);
+            record.vehicle = vehicle;
+            record.vehicleMoved = 0;
+        }
+        record.vehicleMoved += Math.sqrt(distSq);
+    }
+
+    /**
+     * @return the squared length of a move, 0 if it should not be counted (between worlds, or maxDistance or longer)
+     */
+    private static double distanceSquared(Location from, Location to, double maxDistance) {
+        if (from.getWorld() != to.getWorld()) {
+            return 0;
+        }
+        double distSq = from.distanceSquared(to);
+        return distSq < maxDistance * maxDistance ? distSq : 0;
+    }
+
+    private Record prepare(Player player, Location from) {
+        Record record = this.records.get(player.getUniqueId());
+        if (record == null) {
+            record = new Record();
+            record.world = from.getWorld().getName();
+            this.records.put(player.getUniqueId(), record);
+        } else if (!record.world.equals(from.getWorld().getName())) {
+            commit(player, record);
+            record.world = from.getWorld().getName();
+            record.track = TRACK_UNKNOWN;
+        }
+        if (record.track == TRACK_UNKNOWN) {
+            record.track = BukkitPlugin.worldManager.shouldTrack(player, TrackType.PLAYER_MOVE) ? TRACK_YES : TRACK_NO;
+        }
+        return record.track == TRACK_YES ? record : null;
+    }
+
+    /**
+     * Forget the cached tracking decision for a player, call when their world or game mode changes.
+     *
+     * @param player
+     */
+    public void invalidate(Player player) {
+        Record record = this.records.get(player.getUniqueId());
+        if (record != null) {
+            record.track = TRACK_UNKNOWN;
+        }
+    }
+
+    /**
+     * Forget the cached tracking decision of every player, call when the world configuration changes.
+     */
+    public void invalidateAll() {
+        for (Record record : this.records.values()) {
+            record.track = TRACK_UNKNOWN;
+        }
+    }
+
+    /**
+     * Commit everything recorded for a player and stop tracking them.
+     *
+     * @param player
+     */
+    public void remove(Player player) {
+        Record record = this.records.remove(player.getUniqueId());
+        if (record != null) {
+            commit(player, record);
+        }
+    }
+
+    /**
+     * Commit the whole blocks recorded for every online player, fractions are carried over.
+     * Records of players no longer online are dropped.
+     */
+    @Override
+    public void run() {
+        for (Iterator<Map.Entry<UUID, Record>> it = this.records.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<UUID, Record> entry = it.next();
+            Player player = Bukkit.getPlayer(entry.getKey());
+            if (player == null) {
+                it.remove();
+                continue;
+            }
+            commit(player, entry.getValue());
+        }
+    }
+
+    private void commit(Player player, Record record) {
+        int walked = (int) record.walked;
+        if (walked > 0) {
+            StatUtils.instance.increment(player, record.world, "stats", "move", walked);
+            record.walked -= walked;
+        }
+        commitVehicle(player, record);
+    }
+
+    private void commitVehicle(Player player, Record record) {
+        int moved = (int) record.vehicleMoved;
+        if (record.vehicle != null && moved > 0) {
+            StatUtils.instance.increment(player, record.world, "vehicle", record.vehicle, moved);
+            record.vehicleMoved -= moved;
+        }
+    }
+}
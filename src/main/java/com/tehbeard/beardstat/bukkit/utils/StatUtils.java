@@ -2,8 +2,6 @@ package com.tehbeard.beardstat.bukkit.utils;
 
 import java.util.UUID;
 
-import net.dragonzone.promise.Promise;
-
 import org.bukkit.block.Block;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
@@ -13,11 +11,8 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.potion.PotionEffect;
 
 import com.tehbeard.beardstat.Refs;
-import com.tehbeard.beardstat.containers.EntityStatBlob;
+import com.tehbeard.beardstat.containers.StatKey;
 import com.tehbeard.beardstat.bukkit.identifier.IdentifierService;
-import com.tehbeard.beardstat.listeners.defer.DelegateDecrement;
-import com.tehbeard.beardstat.listeners.defer.DelegateIncrement;
-import com.tehbeard.beardstat.listeners.defer.DelegateSet;
 import com.tehbeard.beardstat.manager.EntityStatManager;
 
 /**
@@ -27,6 +22,8 @@ import com.tehbeard.beardstat.manager.EntityStatManager;
  * Methods that take a {@link Player} object use the this.domain domain, and world provided by the player.
  * modifyXXX methods adjust stats relativly. if you pass in +3, the stat is incremented by 3.
  * setXXX methods adjust stats absolutely. If you pass 50, the stat is now 50. 
+ * 
+ * Players whose blob has already loaded are modified directly, changes to players still loading are buffered by the {@link EntityStatManager}.
  */
 public class StatUtils {
 
@@ -193,8 +190,7 @@ public class StatUtils {
      * @param amount
      */
     public void increment(Player player, String world, String category, String statistic, int amount){
-        Promise<EntityStatBlob> blob = manager.getPlayer(player.getName(), player.getUniqueId());
-        blob.onResolve(new DelegateIncrement(domain,world,category,statistic,amount));
+        manager.incrementStat(player.getName(), player.getUniqueId(), new StatKey(domain, world, category, statistic), amount);
     }
 
     /**
@@ -207,8 +203,7 @@ public class StatUtils {
      * @param amount
      */
     public void decrement(Player player, String world, String category, String statistic, int amount){
-        Promise<EntityStatBlob> blob = manager.getPlayer(player.getName(), player.getUniqueId());
-        blob.onResolve(new DelegateDecrement(domain,world,category,statistic,amount));
+        manager.incrementStat(player.getName(), player.getUniqueId(), new StatKey(domain, world, category, statistic), -amount);
     }
     
     /**
@@ -220,8 +215,7 @@ public class StatUtils {
      * @param amount
      */
     public void set(Player player, String world, String category, String statistic, int amount){
-        Promise<EntityStatBlob> blob = manager.getPlayer(player.getName(), player.getUniqueId());
-        blob.onResolve(new DelegateSet(domain,world,category,statistic,amount));
+        manager.setStat(player.getName(), player.getUniqueId(), new StatKey(domain, world, category, statistic), amount);
     }
     
     
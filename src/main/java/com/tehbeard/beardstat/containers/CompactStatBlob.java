@@ -0,0 +1,137 @@
+package com.tehbeard.beardstat.containers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import com.tehbeard.beardstat.dataproviders.IStatDataProvider;
+import com.tehbeard.beardstat.utils.LongIntHashMap;
+
+/**
+ * Read only, compact form of a {@link EntityStatBlob}.
+ * Stats are held as packed metadata id keys in a primitive long to int map, about 12-24 bytes a stat
+ * instead of a {@link StaticStat}, {@link StatKey} and map entries per stat.
+ * {@link IStat} objects are only created when asked for, and are detached copies; use {@link #inflate(IStatDataProvider)}
+ * to get a blob that can be modified, which also only creates its stats when they are asked for.
+ *
+ * @author James
+ *
+ */
+public class CompactStatBlob {
+
+    private final int             entityId;
+    private final String          name;
+    private final String          type;
+    private final UUID            uuid;
+    private final LongIntHashMap  values;
+    private final StatKeyResolver resolver;
+
+    public CompactStatBlob(String name, int entityId, String type, UUID uuid, StatKeyResolver resolver, int expectedSize) {
+        this.name = name;
+        this.entityId = entityId;
+        this.type = type;
+        this.uuid = uuid;
+        this.resolver = resolver;
+        this.values = new LongIntHashMap(expectedSize);
+    }
+
+    /**
+     * Build the compact form of a blob. Only stats that already have metadata ids can be packed.
+     * Loaded values the blob has not created stats for yet are copied as they are.
+     *
+     * @param blob
+     * @param resolver
+     * @return the compact blob, or null if a stat could not be packed
+     */
+    public static CompactStatBlob compact(EntityStatBlob blob, StatKeyResolver resolver) {
+        Collection<IStat> stats = blob.getCreatedStats();
+        CompactStatBlob compact = new CompactStatBlob(blob.getName(), blob.getEntityID(), blob.getType(), blob.getUUID(), resolver, stats.size());
+        for (IStat stat : stats) {
+            long key = resolver.pack(StatKey.of(stat), false);
+            if (key == StatKeyResolver.UNRESOLVED) {
+                return null;
+            }
+            compact.values.put(key, stat.getValue());
+        }
+        blob.copyLoaded(compact.values);
+        return compact;
+    }
+
+    public int getValue(StatKey key) {
+        long packed = this.resolver.pack(key, false);
+        return packed == StatKeyResolver.UNRESOLVED ? 0 : this.values.get(packed, 0);
+    }
+
+    public boolean hasStat(StatKey key) {
+        long packed = this.resolver.pack(key, false);
+        return packed != StatKeyResolver.UNRESOLVED && this.values.containsKey(packed);
+    }
+
+    /**
+     * Materialize a detached copy of a stat, changes to it are not stored.
+     *
+     * @param key
+     * @return
+     */
+    public IStat getStat(StatKey key) {
+        return new StaticStat(key.getDomain(), key.getWorld(), key.getCategory(), key.getStatistic(), getValue(key));
+    }
+
+    /**
+     * Materialize detached copies of every stat.
+     *
+     * @return
+     */
+    public Collection<IStat> getStats() {
+        long[] keys = this.values.keys();
+        List<IStat> out = new ArrayList<IStat>(keys.length);
+        for (long packed : keys) {
+            StatKey key = this.resolver.unpack(packed);
+            if (key != null) {
+                out.add(new StaticStat(key.getDomain(), key.getWorld(), key.getCategory(), key.getStatistic(), this.values.get(packed, 0)));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Expand to a full {@link EntityStatBlob} backed by a copy of the packed values, its stats are created as they are asked for
+     * and start with their archive flag cleared.
+     *
+     * @param provider provider the new blob loads documents from
+     * @return
+     */
+    public EntityStatBlob inflate(IStatDataProvider provider) {
+        EntityStatBlob blob = new EntityStatBlob(this.name, this.entityId, this.type, this.uuid, provider);
+        blob.putLoaded(this.values, this.resolver);
+        return blob;
+    }
+
+    public int size() {
+        return this.values.size();
+    }
+
+    /**
+     * @return approximate heap usage of this blob in bytes.
+     */
+    public long memoryFootprint() {
+        return 64L + this.values.memoryFootprint();
+    }
+
+    public int getEntityID() {
+        return this.entityId;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getType() {
+        return this.type;
+    }
+
+    public UUID getUUID() {
+        return this.uuid;
+    }
+}
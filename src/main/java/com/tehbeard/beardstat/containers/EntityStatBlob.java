@@ -2,19 +2,25 @@ package com.tehbeard.beardstat.containers;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
+import java.util.regex.Matcher;
 
 import com.tehbeard.beardstat.Refs;
 import com.tehbeard.beardstat.containers.documents.IStatDocument;
 import com.tehbeard.beardstat.containers.documents.docfile.DocumentFile;
 import com.tehbeard.beardstat.containers.documents.docfile.DocumentFileRef;
 import com.tehbeard.beardstat.dataproviders.IStatDataProvider;
+import com.tehbeard.beardstat.utils.LongIntHashMap;
 import com.tehbeard.utils.expressions.VariableProvider;
 
 /**
@@ -25,7 +31,22 @@ import com.tehbeard.utils.expressions.VariableProvider;
  */
 public class EntityStatBlob implements VariableProvider {
 
-    private Map<String, IStat> stats = new ConcurrentHashMap<String, IStat>();
+    private final ConcurrentMap<StatKey, IStat> stats = new ConcurrentHashMap<StatKey, IStat>();
+    private final StatIndex index = new StatIndex();
+    /**
+     * StaticStats whose archive flag has been raised since the last save.
+     */
+    private final Queue<StaticStat> archiveQueue = new ConcurrentLinkedQueue<StaticStat>();
+    /**
+     * Stats that do not track their own changes, checked on every save.
+     */
+    private final List<IStat> unqueuedStats = new CopyOnWriteArrayList<IStat>();
+    /**
+     * Loaded values of stats not asked for yet, by packed key. A stat is only created the first time it is asked for,
+     * queries over many stats create every one left. Null when there are none left, only changed while holding this blob's lock.
+     */
+    private volatile LongIntHashMap loadedValues;
+    private StatKeyResolver resolver;
     private int entityId;
     private String name;
     private String type;
@@ -72,10 +93,123 @@ public class EntityStatBlob implements VariableProvider {
      * @param stat
      */
     public void addStat(IStat stat) {
-        this.stats.put(
-                stat.getDomain() + "::" + stat.getWorld() + "::" + stat.getCategory() + "::" + stat.getStatistic(),
-                stat);
+        StatKey key = StatKey.of(stat);
         stat.setOwner(this);
+        this.stats.put(key, stat);
+        this.index.put(key, stat);
+        if (!(stat instanceof StaticStat)) {
+            this.unqueuedStats.add(stat);
+        } else if (stat.isArchive()) {
+            queueArchive((StaticStat) stat);
+        }
+    }
+
+    /**
+     * Called by a {@link StaticStat} when its archive flag is raised.
+     *
+     * @param stat
+     */
+    void queueArchive(StaticStat stat) {
+        this.archiveQueue.offer(stat);
+    }
+
+    /**
+     * Used by data providers while loading, stores a loaded value under a packed key, its stat is created when first asked for.
+     *
+     * @param packedKey
+     * @param value
+     * @param resolver resolver that packed the key
+     */
+    public synchronized void putLoaded(long packedKey, int value, StatKeyResolver resolver) {
+        if (this.loadedValues == null) {
+            this.loadedValues = new LongIntHashMap();
+        }
+        this.resolver = resolver;
+        this.loadedValues.put(packedKey, value);
+    }
+
+    /**
+     * Take a copy of loaded values, used by {@link CompactStatBlob#inflate(IStatDataProvider)}.
+     *
+     * @param values
+     * @param resolver
+     */
+    synchronized void putLoaded(LongIntHashMap values, StatKeyResolver resolver) {
+        if (values.size() > 0) {
+            this.loadedValues = new LongIntHashMap(values);
+            this.resolver = resolver;
+        }
+    }
+
+    /**
+     * Copy the loaded values whose stats have not been created yet, used by {@link CompactStatBlob#compact(EntityStatBlob, StatKeyResolver)}.
+     *
+     * @param out
+     */
+    synchronized void copyLoaded(LongIntHashMap out) {
+        LongIntHashMap values = this.loadedValues;
+        if (values != null) {
+            for (long packed : values.keys()) {
+                out.put(packed, values.get(packed, 0));
+            }
+        }
+    }
+
+    /**
+     * @return the stats created so far, without creating those only loaded
+     */
+    Collection<IStat> getCreatedStats() {
+        return this.stats.values();
+    }
+
+    /**
+     * Create the stat for a key from its loaded value, if it has one.
+     *
+     * @param key
+     * @return the stat, or null if the key has no loaded value
+     */
+    private synchronized IStat createLoaded(StatKey key) {
+        LongIntHashMap values = this.loadedValues;
+        if (values == null) {
+            return null;
+        }
+        IStat existing = this.stats.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        long packed = this.resolver.pack(key, false);
+        if (packed == StatKeyResolver.UNRESOLVED || !values.containsKey(packed)) {
+            return null;
+        }
+        IStat stat = new StaticStat(key.getDomain(), key.getWorld(), key.getCategory(), key.getStatistic(), values.remove(packed, 0));
+        addStat(stat);
+        if (values.size() == 0) {
+            this.loadedValues = null;
+        }
+        return stat;
+    }
+
+    /**
+     * Create the stats of every loaded value left, before a query that may match any of them.
+     * Values whose key cannot be unpacked, while metadata is being reloaded, are kept for the next query.
+     */
+    private synchronized void createAllLoaded() {
+        LongIntHashMap values = this.loadedValues;
+        if (values == null) {
+            return;
+        }
+        for (long packed : values.keys()) {
+            StatKey key = this.resolver.unpack(packed);
+            if (key != null) {
+                int value = values.remove(packed, 0);
+                if (!this.stats.containsKey(key)) {
+                    addStat(new StaticStat(key.getDomain(), key.getWorld(), key.getCategory(), key.getStatistic(), value));
+                }
+            }
+        }
+        if (values.size() == 0) {
+            this.loadedValues = null;
+        }
     }
 
     /**
@@ -100,12 +234,34 @@ public class EntityStatBlob implements VariableProvider {
      * @return
      */
     public IStat getStat(String domain, String world, String category, String statistic) {
-        IStat psn = this.stats.get(domain + "::" + world + "::" + category + "::" + statistic);
+        return getStat(new StatKey(domain, world, category, statistic));
+    }
+
+    /**
+     * Returns a stat object for the supplied key, creating it if it does not exist.
+     * Callers on hot paths should cache the {@link StatKey} and use this method.
+     *
+     * @param key coordinates of the stat
+     * @return
+     */
+    public IStat getStat(StatKey key) {
+        IStat psn = this.stats.get(key);
         if (psn != null) {
             return psn;
         }
-        psn = new StaticStat(domain, world, category, statistic, 0);
-        addStat(psn);
+        if (this.loadedValues != null) {
+            psn = createLoaded(key);
+            if (psn != null) {
+                return psn;
+            }
+        }
+        psn = new StaticStat(key.getDomain(), key.getWorld(), key.getCategory(), key.getStatistic(), 0);
+        psn.setOwner(this);
+        IStat existing = this.stats.putIfAbsent(key, psn);
+        if (existing != null) {
+            return existing;
+        }
+        this.index.put(key, psn);
         return psn;
     }
 
@@ -129,6 +285,8 @@ public class EntityStatBlob implements VariableProvider {
      * to denote all possible values (substituted for ".*" in regex engine) Defaults to readonly mode, any mutators called on this {@link StatVector} will throw {@link IllegalStateException}
      * if readOnly is true
      *
+     * Answered from the blob's domain/world/category/statistic index, each part is matched on its own.
+     *
      * @param domain
      * @param world
      * @param category
@@ -137,12 +295,12 @@ public class EntityStatBlob implements VariableProvider {
      * @return
      */
     public StatVector getStats(String domain, String world, String category, String statistic, boolean readOnly) {
-        String pattern = starToRegex(domain);
-        pattern += "\\::" + starToRegex(world);
-        pattern += "\\::" + starToRegex(category);
-        pattern += "\\::" + starToRegex(statistic);
-
-        return getStats(domain, world, category, statistic, pattern, readOnly);
+        if (this.loadedValues != null) {
+            createAllLoaded();
+        }
+        StatVector vector = new StatVector(domain, world, category, statistic, readOnly);
+        this.index.query(vector, domain, world, category, statistic);
+        return vector;
     }
 
     /**
@@ -163,28 +321,28 @@ public class EntityStatBlob implements VariableProvider {
      */
     public StatVector getStats(String domain, String world, String category, String statistic, String regex,
             boolean readOnly) {
+        if (this.loadedValues != null) {
+            createAllLoaded();
+        }
         StatVector vector = new StatVector(domain, world, category, statistic, readOnly);
-        for (Entry<String, IStat> e : this.stats.entrySet()) {
-            if (Pattern.matches(regex, e.getKey())) {
+        Matcher matcher = StatIndex.compile(regex).matcher("");
+        for (Entry<StatKey, IStat> e : this.stats.entrySet()) {
+            if (matcher.reset(e.getKey().toString()).matches()) {
                 vector.add(e.getValue());
             }
         }
         return vector;
     }
 
-    private String starToRegex(String s) {
-        if (s.equals("*")) {
-            return "[a-zA-Z0-9_]*";
-        }
-        return s;
-    }
-
     /**
      * Return all the stats!
      *
      * @return
      */
     public Collection<IStat> getStats() {
+        if (this.loadedValues != null) {
+            createAllLoaded();
+        }
         return this.stats.values();
     }
 
@@ -198,8 +356,30 @@ public class EntityStatBlob implements VariableProvider {
      * @return
      */
     public boolean hasStat(String domain, String world, String category, String statistic) {
-        return this.stats.containsKey(domain + "::" + world + "::" + category + "::" + statistic);
+        return hasStat(new StatKey(domain, world, category, statistic));
+
+    }
+
+    /**
+     * Checks if a stat under this key has been recorded.
+     *
+     * @param key
+     * @return
+     */
+    public boolean hasStat(StatKey key) {
+        if (this.stats.containsKey(key)) {
+            return true;
+        }
+        return this.loadedValues != null && hasLoaded(key);
+    }
 
+    private synchronized boolean hasLoaded(StatKey key) {
+        LongIntHashMap values = this.loadedValues;
+        if (values == null) {
+            return this.stats.containsKey(key);
+        }
+        long packed = this.resolver.pack(key, false);
+        return packed != StatKeyResolver.UNRESOLVED && values.containsKey(packed);
     }
 
     @Override
@@ -215,7 +395,7 @@ public class EntityStatBlob implements VariableProvider {
             cat = parts[2];
             stat = parts[3];
         }
-        if (parts.length == 2) {
+        else if (parts.length == 2) {
             cat = parts[0];
             stat = parts[1];
         } else {
@@ -240,7 +420,15 @@ public class EntityStatBlob implements VariableProvider {
     public StatBlobRecord cloneForArchive() {
         StatBlobRecord record = new StatBlobRecord(entityId);
 
-        for (IStat stat : this.stats.values()) {
+        StaticStat queued;
+        while ((queued = this.archiveQueue.poll()) != null) {
+            IStat is = queued.snapshotForArchive();
+            if (is != null) {
+                record.stats.add(is);
+            }
+        }
+
+        for (IStat stat : this.unqueuedStats) {
             if (stat.isArchive()) {
                 IStat is = stat.clone();
                 if (is != null) {
@@ -21,5 +21,9 @@ public class StatBlobRecord {
     
     public final List<IStat> stats = new ArrayList<IStat>();
     public final List<DocumentFileRef> files = new ArrayList<DocumentFileRef>();
+    /**
+     * Offset of the end of this record in the provider's journal, -1 if it was not journaled.
+     */
+    public int journalEnd = -1;
     
 }
@@ -0,0 +1,133 @@
+package com.tehbeard.beardstat.containers;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * domain -> world -> category -> statistic index of the stats in a {@link EntityStatBlob}.
+ * Answers {@link EntityStatBlob#getStats(String, String, String, String)} queries by walking the tree,
+ * "*" and ".*" components visit every child, literal components are a single map lookup,
+ * and any other component is treated as a regex and matched against that level's keys only.
+ *
+ * @author James
+ *
+ */
+class StatIndex {
+
+    /**
+     * Compiled patterns are shared by every blob, /stats and stat pages reuse a handful of expressions.
+     */
+    private static final int                           MAX_CACHED_PATTERNS = 256;
+    private static final ConcurrentMap<String, Pattern> patternCache        = new ConcurrentHashMap<String, Pattern>();
+
+    private static final int DEPTH = 4;
+
+    private static class Node {
+        final ConcurrentMap<String, Node> children = new ConcurrentHashMap<String, Node>();
+        volatile IStat                    stat;
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * Index a stat under the given key, replacing any stat already indexed there.
+     *
+     * @param key
+     * @param stat
+     */
+    public void put(StatKey key, IStat stat) {
+        Node node = root;
+        node = child(node, key.getDomain());
+        node = child(node, key.getWorld());
+        node = child(node, key.getCategory());
+        node = child(node, key.getStatistic());
+        node.stat = stat;
+    }
+
+    private static Node child(Node parent, String part) {
+        String k = part == null ? "null" : part;
+        Node n = parent.children.get(k);
+        if (n == null) {
+            Node created = new Node();
+            n = parent.children.putIfAbsent(k, created);
+            if (n == null) {
+                n = created;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Add every stat matching the query to the vector.
+     *
+     * @param vector
+     * @param domain
+     * @param world
+     * @param category
+     * @param statistic
+     */
+    public void query(StatVector vector, String domain, String world, String category, String statistic) {
+        collect(root, new String[]{domain, world, category, statistic}, 0, vector);
+    }
+
+    private void collect(Node node, String[] parts, int level, StatVector vector) {
+        if (level == DEPTH) {
+            IStat stat = node.stat;
+            if (stat != null) {
+                vector.add(stat);
+            }
+            return;
+        }
+        String part = parts[level];
+        if (isWildcard(part)) {
+            for (Node n : node.children.values()) {
+                collect(n, parts, level + 1, vector);
+            }
+        } else if (isLiteral(part)) {
+            Node n = node.children.get(part);
+            if (n != null) {
+                collect(n, parts, level + 1, vector);
+            }
+        } else {
+            Pattern p = compile(part);
+            for (Map.Entry<String, Node> e : node.children.entrySet()) {
+                if (p.matcher(e.getKey()).matches()) {
+                    collect(e.getValue(), parts, level + 1, vector);
+                }
+            }
+        }
+    }
+
+    private static boolean isWildcard(String part) {
+        return part == null || part.equals("*") || part.equals(".*");
+    }
+
+    private static boolean isLiteral(String part) {
+        for (int i = 0; i < part.length(); i++) {
+            if ("\\.[]{}()*+?^$|".indexOf(part.charAt(i)) != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a compiled pattern for the expression, compiling it only on first use.
+     *
+     * @param regex
+     * @return
+     */
+    public static Pattern compile(String regex) {
+        Pattern p = patternCache.get(regex);
+        if (p == null) {
+            p = Pattern.compile(regex);
+            if (patternCache.size() >= MAX_CACHED_PATTERNS) {
+                patternCache.clear();
+            }
+            patternCache.put(regex, p);
+        }
+        return p;
+    }
+}
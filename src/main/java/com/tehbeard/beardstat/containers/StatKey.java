@@ -0,0 +1,100 @@
+package com.tehbeard.beardstat.containers;
+
+/**
+ * Immutable coordinates of a stat (domain, world, category, statistic).
+ * The hash is computed once at construction, so a StatKey can be cached by callers
+ * and used repeatedly to look up a stat without rebuilding a "domain::world::category::statistic" string.
+ *
+ * @author James
+ *
+ */
+public final class StatKey {
+
+    private final String domain;
+    private final String world;
+    private final String category;
+    private final String statistic;
+    private final int    hash;
+    private String       path = null;
+
+    public StatKey(String domain, String world, String category, String statistic) {
+        if (statistic == null) {
+            throw new IllegalArgumentException("Passed null statistic");
+        }
+        this.domain = domain;
+        this.world = world;
+        this.category = category;
+        this.statistic = statistic;
+
+        int h = 7;
+        h = 31 * h + (domain != null ? domain.hashCode() : 0);
+        h = 31 * h + (world != null ? world.hashCode() : 0);
+        h = 31 * h + (category != null ? category.hashCode() : 0);
+        h = 31 * h + statistic.hashCode();
+        this.hash = h;
+    }
+
+    /**
+     * Key for the coordinates of an existing stat
+     *
+     * @param stat
+     * @return
+     */
+    public static StatKey of(IStat stat) {
+        return new StatKey(stat.getDomain(), stat.getWorld(), stat.getCategory(), stat.getStatistic());
+    }
+
+    public String getDomain() {
+        return this.domain;
+    }
+
+    public String getWorld() {
+        return this.world;
+    }
+
+    public String getCategory() {
+        return this.category;
+    }
+
+    public String getStatistic() {
+        return this.statistic;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof StatKey)) {
+            return false;
+        }
+        final StatKey other = (StatKey) obj;
+        return this.hash == other.hash
+                && this.statistic.equals(other.statistic)
+                && eq(this.category, other.category)
+                && eq(this.world, other.world)
+                && eq(this.domain, other.domain);
+    }
+
+    private static boolean eq(String a, String b) {
+        return a == b || (a != null && a.equals(b));
+    }
+
+    /**
+     * @return the key in "domain::world::category::statistic" form, as used by regex queries.
+     */
+    @Override
+    public String toString() {
+        String p = this.path;
+        if (p == null) {
+            p = this.domain + "::" + this.world + "::" + this.category + "::" + this.statistic;
+            this.path = p;
+        }
+        return p;
+    }
+}
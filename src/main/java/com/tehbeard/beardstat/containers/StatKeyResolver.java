@@ -0,0 +1,72 @@
+package com.tehbeard.beardstat.containers;
+
+/**
+ * Maps stat coordinates to and from the metadata ids assigned by a data provider,
+ * packing the domain, world, category and statistic ids into a single long.
+ * Each id occupies 16 bits, ids above {@link #MAX_ID} cannot be packed.
+ *
+ * @author James
+ *
+ */
+public interface StatKeyResolver {
+
+    /**
+     * Returned by {@link #pack(StatKey, boolean)} when a key cannot be packed.
+     */
+    public static final long UNRESOLVED = -1L;
+
+    public static final int MAX_ID = 0xFFFE;
+
+    /**
+     * Pack the key into a long using the metadata ids of its components.
+     *
+     * @param key
+     * @param create create missing metadata entries
+     * @return the packed key, or {@link #UNRESOLVED}
+     */
+    public long pack(StatKey key, boolean create);
+
+    /**
+     * Rebuild the coordinates of a packed key.
+     *
+     * @param packed
+     * @return the key, or null if an id is unknown
+     */
+    public StatKey unpack(long packed);
+
+    /**
+     * Packing helpers shared by implementations.
+     */
+    public static final class Packing {
+
+        private Packing() {
+        }
+
+        public static long pack(int domainId, int worldId, int categoryId, int statisticId) {
+            if (!valid(domainId) || !valid(worldId) || !valid(categoryId) || !valid(statisticId)) {
+                return UNRESOLVED;
+            }
+            return ((long) domainId << 48) | ((long) worldId << 32) | ((long) categoryId << 16) | statisticId;
+        }
+
+        private static boolean valid(int id) {
+            return id >= 0 && id <= MAX_ID;
+        }
+
+        public static int domainId(long packed) {
+            return (int) (packed >>> 48) & 0xFFFF;
+        }
+
+        public static int worldId(long packed) {
+            return (int) (packed >>> 32) & 0xFFFF;
+        }
+
+        public static int categoryId(long packed) {
+            return (int) (packed >>> 16) & 0xFFFF;
+        }
+
+        public static int statisticId(long packed) {
+            return (int) packed & 0xFFFF;
+        }
+    }
+}
@@ -1,31 +1,59 @@
 package com.tehbeard.beardstat.containers;
 
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
 /**
  * Concrete implementation of a player stat. This is the default type for stats,
  * They do not change themselves, instead relying on other code to modify them.
  * Upon modification they raise the archive flag, making eligable to be saved.
  * 
+ * The value, archive flag and change since the last save are packed into a single long and updated with compare and swap,
+ * so no locks are taken and {@link #snapshotForArchive()} can copy the state and clear it in one step.
+ * Increments are saved as a delta added to the stored value, so servers sharing a database do not overwrite each other's counters.
+ * Once the stat is set, or the delta no longer fits, the change is absolute and the value itself is saved.
+ * The change that raises the flag queues the stat with its owner, see {@link EntityStatBlob#cloneForArchive()}.
+ * 
  * @author James
  * 
  */
 
 public class StaticStat implements IStat {
 
+    private static final AtomicLongFieldUpdater<StaticStat> STATE = AtomicLongFieldUpdater.newUpdater(StaticStat.class, "state");
+
+    private static final long VALUE_MASK  = 0xFFFFFFFFL;
+    private static final long ARCHIVE     = 1L << 32;
+    private static final long ABSOLUTE    = 1L << 33;
+    private static final int  DELTA_SHIFT = 34;
+    private static final long MAX_DELTA   = (1L << 29) - 1;
+    private static final long MIN_DELTA   = -(1L << 29);
+
     EntityStatBlob  owner    = null;
     private String  domain;
     private String  world;
     private String  category = "stats";
     private String  statistic;
-    private int     value;
 
-    private boolean archive  = false;
+    /**
+     * low 32 bits hold the value, bit 32 the archive flag, bit 33 the absolute flag,
+     * the top 30 bits the signed change since the last save.
+     */
+    private volatile long state;
 
     public StaticStat(String domain, String world, String cat, String statistic, int value) {
         if(statistic == null){throw new IllegalArgumentException("Passed null statistic");}
         this.domain = domain;
         this.world = world;
         this.statistic = statistic;
-        this.value = value;
+        this.state = value & VALUE_MASK;
+        this.category = cat;
+    }
+
+    private StaticStat(String domain, String world, String cat, String statistic, long state) {
+        this.domain = domain;
+        this.world = world;
+        this.statistic = statistic;
+        this.state = state;
         this.category = cat;
     }
 
@@ -35,8 +63,8 @@ public class StaticStat implements IStat {
      * @return
      */
     @Override
-    public synchronized int getValue() {
-        return this.value;
+    public int getValue() {
+        return (int) this.state;
     }
 
     /**
@@ -46,8 +74,8 @@ public class StaticStat implements IStat {
      *            value to set stat to
      */
     @Override
-    public synchronized void setValue(int value) {
-        changeValue(value);
+    public void setValue(int value) {
+        raised(STATE.getAndSet(this, (value & VALUE_MASK) | ARCHIVE | ABSOLUTE));
     }
 
     /**
@@ -67,10 +95,10 @@ public class StaticStat implements IStat {
      *            amount to increment stat by new value = old value + i
      */
     @Override
-    public synchronized void incrementStat(int i) {
+    public void incrementStat(int i) {
         // if(i < 0 ){throw new
         // IllegalArgumentException("Cannot increment by negative number!");}
-        changeValue(this.value + i);
+        addValue(i);
     }
 
     /**
@@ -80,10 +108,10 @@ public class StaticStat implements IStat {
      *            amount to dencrement stat by new value = old value - i
      */
     @Override
-    public synchronized void decrementStat(int i) {
+    public void decrementStat(int i) {
         // if(i < 0 ){throw new
         // IllegalArgumentException("Cannot decrement by negative number!");}
-        changeValue(this.value - i);
+        addValue(-i);
     }
 
     /**
@@ -95,11 +123,14 @@ public class StaticStat implements IStat {
     }
 
     /**
-     * Clear the archive flag
+     * Clear the archive flag, and the change recorded since the last save
      */
     @Override
-    public synchronized void clearArchive() {
-        this.archive = false;
+    public void clearArchive() {
+        long s;
+        do {
+            s = this.state;
+        } while ((s & ~VALUE_MASK) != 0 && !STATE.compareAndSet(this, s, s & VALUE_MASK));
     }
 
     /**
@@ -107,8 +138,8 @@ public class StaticStat implements IStat {
      * database, and the flag cleared on the next save.
      */
     @Override
-    public synchronized boolean isArchive() {
-        return this.archive;
+    public boolean isArchive() {
+        return (this.state & ARCHIVE) != 0;
     }
 
     /**
@@ -119,9 +150,88 @@ public class StaticStat implements IStat {
         return this.owner;
     }
 
-    private synchronized void changeValue(int to) {
-        this.value = to;
-        this.archive = true;
+    private void addValue(int i) {
+        long s;
+        long next;
+        do {
+            s = this.state;
+            next = (((int) s + i) & VALUE_MASK) | ARCHIVE | (s & ABSOLUTE);
+            if ((s & ABSOLUTE) == 0) {
+                long delta = (s >> DELTA_SHIFT) + i;
+                if (delta < MIN_DELTA || delta > MAX_DELTA) {
+                    next |= ABSOLUTE;
+                } else {
+                    next |= delta << DELTA_SHIFT;
+                }
+            }
+        } while (!STATE.compareAndSet(this, s, next));
+        raised(s);
+    }
+
+    /**
+     * @return true if the value should be saved as is, false if {@link #getDelta()} should be added to the stored value
+     */
+    public boolean isAbsolute() {
+        return (this.state & ABSOLUTE) != 0;
+    }
+
+    /**
+     * @return change since the last save, only meaningful when {@link #isAbsolute()} is false
+     */
+    public int getDelta() {
+        return (int) (this.state >> DELTA_SHIFT);
+    }
+
+    /**
+     * Queue this stat for the next save if the update that replaced previous raised the archive flag.
+     *
+     * @param previous state before the update
+     */
+    private void raised(long previous) {
+        if ((previous & ARCHIVE) == 0) {
+            EntityStatBlob blob = this.owner;
+            if (blob != null) {
+                blob.queueArchive(this);
+            }
+        }
+    }
+
+    /**
+     * Atomically copy this stat and clear its archive flag and recorded change.
+     * A change racing with this call either lands in the copy, or sets the flag again for the next save.
+     *
+     * @return a copy of the stat carrying its delta and absolute flag, or null if the archive flag was not set
+     */
+    public StaticStat snapshotForArchive() {
+        long s;
+        do {
+            s = this.state;
+            if ((s & ARCHIVE) == 0) {
+                return null;
+            }
+        } while (!STATE.compareAndSet(this, s, s & VALUE_MASK));
+        return new StaticStat(this.domain, this.world, this.category, this.statistic, s);
+    }
+
+    /**
+     * Create a detached stat carrying a change, in the form returned by {@link #snapshotForArchive()}.
+     *
+     * @param domain
+     * @param world
+     * @param cat
+     * @param statistic
+     * @param value the delta, or the value if absolute
+     * @param absolute
+     * @return
+     */
+    public static StaticStat forChange(String domain, String world, String cat, String statistic, int value, boolean absolute) {
+        long s = (value & VALUE_MASK) | ARCHIVE;
+        if (absolute || value < MIN_DELTA || value > MAX_DELTA) {
+            s |= ABSOLUTE;
+        } else {
+            s |= (long) value << DELTA_SHIFT;
+        }
+        return new StaticStat(domain, world, cat, statistic, s);
     }
 
     /**
@@ -134,13 +244,19 @@ public class StaticStat implements IStat {
 
     @Override
     public String toString() {
-        return this.category + "." + this.statistic + "=" + this.value;
+        return this.category + "." + this.statistic + "=" + getValue();
     }
 
+    /**
+     * Force the stat to be saved, the current value is written as is.
+     */
     @Override
-    public synchronized void archive() {
-        this.archive = true;
-
+    public void archive() {
+        long s;
+        do {
+            s = this.state;
+        } while ((s & (ARCHIVE | ABSOLUTE)) != (ARCHIVE | ABSOLUTE) && !STATE.compareAndSet(this, s, s | ARCHIVE | ABSOLUTE));
+        raised(s);
     }
 
     @Override
@@ -165,6 +281,6 @@ public class StaticStat implements IStat {
 
     @Override
     public IStat clone() {
-        return new StaticStat(this.domain, this.world, this.category, this.statistic, this.value);
+        return new StaticStat(this.domain, this.world, this.category, this.statistic, getValue());
     }
 }
@@ -0,0 +1,282 @@
+package com.tehbeard.beardstat.dataproviders;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small fixed size pool of connections, each carrying its own cache of prepared statements.
+ * A thread that acquires a connection while already holding one gets the same connection back,
+ * so methods that call each other can each acquire and release without deadlocking on the pool.
+ *
+ * Connections are opened on first use and reopened if found closed.
+ *
+ * @author James
+ */
+public class ConnectionPool {
+
+    /**
+     * Opens connections for the pool.
+     */
+    public interface ConnectionFactory {
+
+        public Connection open() throws SQLException;
+    }
+
+    /**
+     * Loads the SQL of a named script.
+     */
+    public interface ScriptSource {
+
+        public String getScript(String name);
+    }
+
+    /**
+     * A pooled connection and its statements, valid until released.
+     */
+    public final class Handle {
+
+        private Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+        private final Map<String, PreparedStatement> generated = new HashMap<String, PreparedStatement>();
+        private int depth = 0;
+
+        public Connection getConnection() {
+            return this.connection;
+        }
+
+        /**
+         * @return true if the holding thread acquired this connection more than once and has not released it yet
+         */
+        public boolean isNested() {
+            return this.depth > 1;
+        }
+
+        /**
+         * Get this connection's statement for a script, preparing it on first use.
+         *
+         * @param script name of the script
+         * @return
+         * @throws SQLException
+         */
+        public PreparedStatement prepare(String script) throws SQLException {
+            return prepare(script, Statement.NO_GENERATED_KEYS);
+        }
+
+        /**
+         * Get this connection's statement for a script, preparing it on first use.
+         *
+         * @param script name of the script
+         * @param flags flags passed to {@link Connection#prepareStatement(String, int)}
+         * @return
+         * @throws SQLException
+         */
+        public PreparedStatement prepare(String script, int flags) throws SQLException {
+            PreparedStatement stmt = this.statements.get(script);
+            if (stmt == null) {
+                stmt = this.connection.prepareStatement(ConnectionPool.this.scripts.getScript(script), flags);
+                this.statements.put(script, stmt);
+            }
+            return stmt;
+        }
+
+        /**
+         * Get this connection's statement for generated SQL, preparing it on first use.
+         * Only for SQL built from a small fixed set of shapes, every distinct string keeps a statement open.
+         *
+         * @param sql
+         * @return
+         * @throws SQLException
+         */
+        public PreparedStatement prepareSQL(String sql) throws SQLException {
+            PreparedStatement stmt = this.generated.get(sql);
+            if (stmt == null) {
+                stmt = this.connection.prepareStatement(sql);
+                this.generated.put(sql, stmt);
+            }
+            return stmt;
+        }
+
+        private void open() throws SQLException {
+            if (this.connection == null || this.connection.isClosed()) {
+                close();
+                this.connection = ConnectionPool.this.factory.open();
+            }
+        }
+
+        private void closeAll(Map<String, PreparedStatement> stmts) {
+            for (PreparedStatement stmt : stmts.values()) {
+                try {
+                    stmt.close();
+                } catch (SQLException e) {
+                }
+            }
+            stmts.clear();
+        }
+
+        private void close() {
+            closeAll(this.statements);
+            closeAll(this.generated);
+            if (this.connection != null && ConnectionPool.this.owned) {
+                try {
+                    this.connection.close();
+                } catch (SQLException e) {
+                }
+            }
+            this.connection = null;
+        }
+    }
+
+    private final ConnectionFactory factory;
+    private final ScriptSource scripts;
+    private final boolean owned;
+    private final long timeoutMillis;
+    private final List<Handle> handles = new ArrayList<Handle>();
+    private final BlockingQueue<Handle> idle;
+    private final ThreadLocal<Handle> bound = new ThreadLocal<Handle>();
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong waited = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     *
+     * @param size number of connections
+     * @param factory
+     * @param owned true if the pool should close the connections the factory opens
+     * @param scripts
+     * @param timeoutMillis how long {@link #acquire()} waits for a free connection
+     */
+    public ConnectionPool(int size, ConnectionFactory factory, boolean owned, ScriptSource scripts, long timeoutMillis) {
+        size = Math.max(1, size);
+        this.factory = factory;
+        this.scripts = scripts;
+        this.owned = owned;
+        this.timeoutMillis = timeoutMillis;
+        this.idle = new ArrayBlockingQueue<Handle>(size);
+        for (int i = 0; i < size; i++) {
+            Handle h = new Handle();
+            this.handles.add(h);
+            this.idle.add(h);
+        }
+    }
+
+    /**
+     * Take a connection, waiting for one to be released if all are in use.
+     * Every call must be matched by a call to {@link #release(Handle)}.
+     *
+     * @return
+     * @throws SQLException if no connection became free in time, or one could not be opened
+     */
+    public Handle acquire() throws SQLException {
+        Handle h = this.bound.get();
+        if (h != null) {
+            h.depth++;
+            return h;
+        }
+        this.acquired.incrementAndGet();
+        h = this.idle.poll();
+        if (h == null) {
+            long start = System.nanoTime();
+            try {
+                h = this.idle.poll(this.timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            recordWait(System.nanoTime() - start);
+            if (h == null) {
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+        }
+        try {
+            h.open();
+        } catch (SQLException e) {
+            this.idle.add(h);
+            throw e;
+        }
+        h.depth = 1;
+        this.bound.set(h);
+        return h;
+    }
+
+    private void recordWait(long nanos) {
+        this.waited.incrementAndGet();
+        this.waitNanos.addAndGet(nanos);
+        long max;
+        do {
+            max = this.maxWaitNanos.get();
+        } while (nanos > max && !this.maxWaitNanos.compareAndSet(max, nanos));
+    }
+
+    /**
+     * Give back a connection taken with {@link #acquire()}.
+     *
+     * @param h
+     */
+    public void release(Handle h) {
+        if (--h.depth > 0) {
+            return;
+        }
+        this.bound.remove();
+        this.idle.add(h);
+    }
+
+    /**
+     * Close every connection, they are reopened if the pool is used again.
+     * Connections in use are closed too, only call when nothing else is using the pool.
+     */
+    public void close() {
+        for (Handle h : this.handles) {
+            h.close();
+        }
+    }
+
+    public int getSize() {
+        return this.handles.size();
+    }
+
+    /**
+     * @return number of connections not in use
+     */
+    public int getIdleCount() {
+        return this.idle.size();
+    }
+
+    /**
+     * @return number of times a connection was taken from the pool
+     */
+    public long getAcquireCount() {
+        return this.acquired.get();
+    }
+
+    /**
+     * @return number of times a thread had to wait for a connection
+     */
+    public long getWaitCount() {
+        return this.waited.get();
+    }
+
+    /**
+     * @return total time spent waiting for connections, in milliseconds
+     */
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.waitNanos.get());
+    }
+
+    /**
+     * @return longest wait for a connection, in milliseconds
+     */
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.maxWaitNanos.get());
+    }
+}
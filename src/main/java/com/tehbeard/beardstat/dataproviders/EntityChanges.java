@@ -0,0 +1,19 @@
+package com.tehbeard.beardstat.dataproviders;
+
+import com.tehbeard.beardstat.containers.StatBlobRecord;
+
+/**
+ * Changes for an entity whose id is not known yet, see {@link IStatDataProvider#pushEntityChanges(ProviderQuery, java.util.Collection)}.
+ * The entity is found, or created if the query allows it, when the record is written.
+ *
+ * @author James
+ */
+class EntityChanges extends StatBlobRecord {
+
+    final ProviderQuery query;
+
+    EntityChanges(ProviderQuery query) {
+        super(-1);
+        this.query = query;
+    }
+}
@@ -1,6 +1,10 @@
 package com.tehbeard.beardstat.dataproviders;
 
+import java.util.Collection;
+import java.util.Map;
+
 import com.tehbeard.beardstat.containers.EntityStatBlob;
+import com.tehbeard.beardstat.containers.IStat;
 import com.tehbeard.beardstat.containers.documents.DocumentHistory;
 import com.tehbeard.beardstat.containers.documents.docfile.DocumentFile;
 import com.tehbeard.beardstat.dataproviders.metadata.CategoryMeta;
@@ -31,6 +35,14 @@ public interface IStatDataProvider {
      */
     public EntityStatBlob pullEntityBlob(ProviderQuery query);
 
+    /**
+     * Pulls several entities out of the database at once
+     *
+     * @param queries
+     * @return the blob for each query that found or created an entity, queries that did not are left out
+     */
+    public Map<ProviderQuery, EntityStatBlob> pullEntityBlobs(Collection<ProviderQuery> queries);
+
     /**
      * Pushes the entity into the database, this may not happen if the entity is queued and something stops the queue from being processed.
      *
@@ -38,6 +50,15 @@ public interface IStatDataProvider {
      */
     public void pushEntityBlob(EntityStatBlob blob);
 
+    /**
+     * Queue changes for an entity whose blob is not loaded, written on a later flush once the entity is found or created.
+     * Changes are detached stats as returned by {@link com.tehbeard.beardstat.containers.StaticStat#forChange}.
+     *
+     * @param query finds the entity, it is created if it does not exist
+     * @param changes
+     */
+    public void pushEntityChanges(ProviderQuery query, Collection<IStat> changes);
+
     /**
      * Checks if the database contains a blob matching this one.
      *
@@ -72,6 +93,11 @@ public interface IStatDataProvider {
      */
     public void flush();
 
+    /**
+     * Wait for flushes already requested to finish, then stop the flush threads. Call once when shutting down.
+     */
+    public void shutdown();
+
     /**
      * Returns the DomainMeta object for the given domain
      * @param gameTag
@@ -6,6 +6,9 @@ import com.tehbeard.beardstat.DbPlatform;
 import com.tehbeard.beardstat.containers.EntityStatBlob;
 import com.tehbeard.beardstat.containers.IStat;
 import com.tehbeard.beardstat.containers.StatBlobRecord;
+import com.tehbeard.beardstat.containers.StatKey;
+import com.tehbeard.beardstat.containers.StatKeyResolver;
+import com.tehbeard.beardstat.containers.StaticStat;
 import com.tehbeard.beardstat.containers.documents.docfile.DocumentFile;
 import com.tehbeard.beardstat.containers.documents.docfile.DocumentFileRef;
 import com.tehbeard.beardstat.bukkit.identifier.IdentifierService;
@@ -14,6 +17,7 @@ import com.tehbeard.beardstat.dataproviders.metadata.DomainMeta;
 import com.tehbeard.beardstat.dataproviders.metadata.StatisticMeta;
 import com.tehbeard.beardstat.dataproviders.metadata.StatisticMeta.Formatting;
 import com.tehbeard.beardstat.dataproviders.metadata.WorldMeta;
+import com.tehbeard.beardstat.utils.FlushScheduler;
 import com.tehbeard.utils.sql.DBVersion;
 import com.tehbeard.utils.sql.JDBCDataSource;
 import com.tehbeard.utils.sql.PostUpgrade;
@@ -23,21 +27,33 @@ import com.tehbeard.utils.uuid.MojangWebAPI;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 
@@ -49,7 +65,7 @@ import java.util.logging.Level;
  *
  */
 @SQLInitScript("sql/maintenence/create.tables")
-public abstract class JDBCStatDataProvider extends JDBCDataSource implements IStatDataProvider {
+public abstract class JDBCStatDataProvider extends JDBCDataSource implements IStatDataProvider, StatKeyResolver {
 
     public Connection getConnection(){
         return connection;
@@ -59,7 +75,14 @@ public abstract class JDBCStatDataProvider extends JDBCDataSource implements ISt
     public static final String SQL_SAVE_ENTITY = "sql/entity/saveEntity";
     public static final String SQL_UPDATE_ENTITY = "sql/entity/updateEntityName";
     public static final String SQL_SAVE_STAT = "sql/entity/saveStat";
+    public static final String SQL_ADD_STAT = "sql/entity/addStat";
     public static final String SQL_LOAD_ENTITY_DATA = "sql/entity/getEntityData";
+    public static final String SQL_LOAD_ENTITIES = "sql/entity/getEntities";
+    public static final String SQL_LOAD_ENTITIES_DATA = "sql/entity/getEntitiesData";
+    /**
+     * Most entities loaded by one pair of queries in {@link #pullEntityBlobs(Collection)}.
+     */
+    public static final int MAX_BATCH_LOAD = 100;
     //Component scripts
     public static final String SQL_LOAD_DOMAINS = "sql/components/load/getDomains";
     public static final String SQL_LOAD_WORLDS = "sql/components/load/getWorlds";
@@ -69,6 +92,10 @@ public abstract class JDBCStatDataProvider extends JDBCDataSource implements ISt
     public static final String SQL_SAVE_WORLD = "sql/components/save/saveWorld";
     public static final String SQL_SAVE_CATEGORY = "sql/components/save/saveCategory";
     public static final String SQL_SAVE_STATISTIC = "sql/components/save/saveStatistic";
+    public static final String SQL_FIND_DOMAINS = "sql/components/load/findDomains";
+    public static final String SQL_FIND_WORLDS = "sql/components/load/findWorlds";
+    public static final String SQL_FIND_CATEGORIES = "sql/components/load/findCategories";
+    public static final String SQL_FIND_STATISTICS = "sql/components/load/findStatistics";
     public static final String SQL_SAVE_UUID = "sql/save/setUUID";
     
     //Maintenence scripts
@@ -89,25 +116,8 @@ public abstract class JDBCStatDataProvider extends JDBCDataSource implements ISt
     protected PreparedStatement loadCategoriesList;
     @SQLScript(SQL_LOAD_STATISTICS)
     protected PreparedStatement loadStatisticsList;
-    // save components
-    @SQLScript(value = SQL_SAVE_DOMAIN,flags = Statement.RETURN_GENERATED_KEYS)
-    protected PreparedStatement saveDomain;
-    @SQLScript(value = SQL_SAVE_WORLD,flags = Statement.RETURN_GENERATED_KEYS)
-    protected PreparedStatement saveWorld;
-    @SQLScript(value = SQL_SAVE_CATEGORY,flags = Statement.RETURN_GENERATED_KEYS)
-    protected PreparedStatement saveCategory;
-    @SQLScript(value = SQL_SAVE_STATISTIC,flags = Statement.RETURN_GENERATED_KEYS)
-    protected PreparedStatement saveStatistic;
-    // Load data from db
-    @SQLScript(SQL_LOAD_ENTITY_DATA)
-    protected PreparedStatement loadEntityData;
-    // save to db
-    @SQLScript(value=SQL_SAVE_ENTITY, flags = Statement.RETURN_GENERATED_KEYS)
-    protected PreparedStatement saveEntity;
-    @SQLScript(value=SQL_UPDATE_ENTITY)
-    protected PreparedStatement updateEntityName;
-    @SQLScript(SQL_SAVE_STAT)
-    protected PreparedStatement saveEntityData;
+    // Components are saved with statements from the pool, see createMeta
+    // Entity loads and stat saves use statements from the pool, see pool
     // Maintenance
     @SQLScript(SQL_KEEP_ALIVE)
     protected PreparedStatement keepAlive;
@@ -119,12 +129,102 @@ public abstract class JDBCStatDataProvider extends JDBCDataSource implements ISt
     protected PreparedStatement setUUID;
     // default connection related configuration
     // ID Cache
-    private final Map<String, DomainMeta> domainMetaMap = new HashMap<String, DomainMeta>();
-    private final Map<String, WorldMeta> worldMetaMap = new HashMap<String, WorldMeta>();
-    private final Map<String, CategoryMeta> categoryMetaMap = new HashMap<String, CategoryMeta>();
-    private final Map<String, StatisticMeta> statisticMetaMap = new HashMap<String, StatisticMeta>();
+    /**
+     * One kind of metadata, its cache and how its rows are created and read.
+     * Instances are also the lock held while creating entries of their kind.
+     */
+    private static abstract class MetaKind<T> {
+
+        final MetadataRegistry<T> registry = new MetadataRegistry<T>();
+        final String saveScript;
+        final String findScript;
+        final String idColumn;
+        final String tagColumn;
+
+        MetaKind(String saveScript, String findScript, String idColumn, String tagColumn) {
+            this.saveScript = saveScript;
+            this.findScript = findScript;
+            this.idColumn = idColumn;
+            this.tagColumn = tagColumn;
+        }
+
+        abstract void bindSave(PreparedStatement stmt, String tag) throws SQLException;
+
+        abstract T read(ResultSet rs) throws SQLException;
+    }
+    private final MetaKind<DomainMeta> domains = new MetaKind<DomainMeta>(SQL_SAVE_DOMAIN, SQL_FIND_DOMAINS, "domainId", "domain") {
+        @Override
+        void bindSave(PreparedStatement stmt, String tag) throws SQLException {
+            stmt.setString(1, tag);
+        }
+
+        @Override
+        DomainMeta read(ResultSet rs) throws SQLException {
+            return new DomainMeta(rs.getInt("domainId"), rs.getString("domain"));
+        }
+    };
+    private final MetaKind<WorldMeta> worlds = new MetaKind<WorldMeta>(SQL_SAVE_WORLD, SQL_FIND_WORLDS, "worldId", "world") {
+        @Override
+        void bindSave(PreparedStatement stmt, String tag) throws SQLException {
+            stmt.setString(1, tag);
+            stmt.setString(2, tag.replaceAll("_", " "));
+        }
+
+        @Override
+        WorldMeta read(ResultSet rs) throws SQLException {
+            return new WorldMeta(rs.getInt("worldId"), rs.getString("world"), rs.getString("name"));
+        }
+    };
+    private final MetaKind<CategoryMeta> categories = new MetaKind<CategoryMeta>(SQL_SAVE_CATEGORY, SQL_FIND_CATEGORIES, "categoryId", "category") {
+        @Override
+        void bindSave(PreparedStatement stmt, String tag) throws SQLException {
+            stmt.setString(1, tag);
+        }
+
+        @Override
+        CategoryMeta read(ResultSet rs) throws SQLException {
+            return new CategoryMeta(rs.getInt("categoryId"), rs.getString("category"), rs.getString("statwrapper"));
+        }
+    };
+    private final MetaKind<StatisticMeta> statistics = new MetaKind<StatisticMeta>(SQL_SAVE_STATISTIC, SQL_FIND_STATISTICS, "statisticId", "statistic") {
+        @Override
+        void bindSave(PreparedStatement stmt, String tag) throws SQLException {
+            stmt.setString(1, tag);
+            stmt.setString(2, IdentifierService.getHumanName(tag));
+            stmt.setString(3, Formatting.none.toString().toLowerCase());
+        }
+
+        @Override
+        StatisticMeta read(ResultSet rs) throws SQLException {
+            return new StatisticMeta(rs.getInt("statisticId"), rs.getString("statistic"), rs.getString("name"), Formatting.valueOf(rs.getString("formatting")));
+        }
+    };
     // Write queue
-    private HashMap<Integer, StatBlobRecord> writeCache = new HashMap<Integer, StatBlobRecord>();
+    /**
+     * Records waiting to be written, producers never block on a running flush.
+     */
+    private final Queue<StatBlobRecord> writeQueue = new ConcurrentLinkedQueue<StatBlobRecord>();
+    /**
+     * Records taken off the queue that could not be written yet, only touched while holding flushLock.
+     */
+    private final LinkedList<StatBlobRecord> retryRecords = new LinkedList<StatBlobRecord>();
+    private final Object flushLock = new Object();
+    /**
+     * Connections used by loads, flushes and document storage, each with its own statements.
+     */
+    protected ConnectionPool pool;
+    public static final long POOL_TIMEOUT = 30000;
+    protected final FlushScheduler flushScheduler;
+    /**
+     * Changes waiting to be committed, kept on disk. Null when disabled.
+     */
+    private StatJournal journal;
+    public static final String JOURNAL_FILE = "stats.journal";
+    /**
+     * Entities recently found not to exist.
+     */
+    protected final NegativeCache negativeCache;
+    public static final int NEGATIVE_CACHE_SIZE = 10000;
     //Configuration/env
     protected DbPlatform platform;
     protected DatabaseConfiguration config;
@@ -134,6 +234,8 @@ public abstract class JDBCStatDataProvider extends JDBCDataSource implements ISt
         this.connectionProperties.put("allowMultiQuery", "true");
         this.config = config;
         this.platform = platform;
+        this.flushScheduler = new FlushScheduler("BeardStat-flush", config.flushThreads, config.flushQueueDepth);
+        this.negativeCache = new NegativeCache(config.negativeCacheTTL * 1000L, NEGATIVE_CACHE_SIZE);
     }
 
     /**
@@ -153,85 +255,143 @@ public abstract class JDBCStatDataProvider extends JDBCDataSource implements ISt
 
         try {
             setup();
+            if (pool != null) {
+                pool.close();
+            }
+            pool = createPool();
             doMigration(getDataSourceVersion());
             executeScript(SQL_METADATA_CATEGORY);
             executeScript(SQL_METADATA_STATISTIC);
             executeScript(SQL_METADATA_STATIC_STATS);
             executeScript(SQL_METADATA_STATIC_FIXNULL);
             cacheComponents();
+            if (config.journal && journal == null) {
+                openJournal();
+            }
         } catch (SQLException e) {
             throw new BeardStatRuntimeException("Failed to initialize database", e, false);
         }
 
     }
 
+    /**
+     * Create the pool used for entity and document work, called after the main connection is opened.
+     * By default the pool opens {@link DatabaseConfiguration#poolSize} connections of its own to the same database.
+     *
+     * @return
+     * @throws SQLException
+     */
+    protected ConnectionPool createPool() throws SQLException {
+        final String url = connection.getMetaData().getURL();
+        return new ConnectionPool(config.poolSize, new ConnectionPool.ConnectionFactory() {
+            @Override
+            public Connection open() throws SQLException {
+                return DriverManager.getConnection(url, connectionProperties);
+            }
+        }, true, scriptSource(), POOL_TIMEOUT);
+    }
+
+    /**
+     * @return loads pooled statements from the same scripts as the annotated ones
+     */
+    protected ConnectionPool.ScriptSource scriptSource() {
+        return new ConnectionPool.ScriptSource() {
+            @Override
+            public String getScript(String name) {
+                return readSQLFile(scriptSuffix, name);
+            }
+        };
+    }
+
+    /**
+     * @return pool used for entity and document work
+     */
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
     /**
      * Cache entries for quicker resolvement on our end.
      */
     public void cacheComponents() {
-        ResultSet rs;
+        cacheKind(domains, loadDomainsList, SQL_LOAD_DOMAINS);
+        cacheKind(worlds, loadWorldsList, SQL_LOAD_WORLDS);
+        cacheKind(categories, loadCategoriesList, SQL_LOAD_CATEGORIES);
+        cacheKind(statistics, loadStatisticsList, SQL_LOAD_STATISTICS);
+    }
+
+    private <T> void cacheKind(MetaKind<T> kind, PreparedStatement load, String script) {
         try {
-            //Domains
-            rs = loadDomainsList.executeQuery();
-            domainMetaMap.clear();
+            ResultSet rs = load.executeQuery();
+            kind.registry.clear();
             while (rs.next()) {
-                DomainMeta dm = new DomainMeta(
-                        rs.getInt("domainId"),
-                        rs.getString("domain"));
-                domainMetaMap.put(rs.getString("domain"), dm);
+                kind.registry.put(rs.getString(kind.tagColumn), rs.getInt(kind.idColumn), kind.read(rs));
             }
             rs.close();
         } catch (SQLException e) {
-            this.platform.mysqlError(e, SQL_LOAD_DOMAINS);
+            this.platform.mysqlError(e, script);
         }
-        try {
-            //Worlds
-            rs = loadWorldsList.executeQuery();
-            worldMetaMap.clear();
-            while (rs.next()) {
-                WorldMeta wm = new WorldMeta(
-                        rs.getInt("worldId"),
-                        rs.getString("world"),
-                        rs.getString("name"));
-                worldMetaMap.put(rs.getString("world"), wm);
-            }
-            rs.close();
-        } catch (SQLException e) {
-            this.platform.mysqlError(e, SQL_LOAD_WORLDS);
+    }
+
+    private static final int QUERY_BY_UUID = 1;
+    private static final int QUERY_BY_NAME = 2;
+    private static final int QUERY_LIKE_NAME = 3;
+    private static final int QUERY_LOOKUP = 3;
+    private static final int QUERY_TYPE = 4;
+    /**
+     * Processed SQL for each shape of {@link #queryDatabase(ProviderQuery)}, built on first use.
+     * Each pooled connection keeps one statement per shape.
+     */
+    private final String[] queryShapes = new String[8];
+
+    /**
+     * Sizes an {@code IN (?)} list is padded up to, so each script only has a few shapes for the pool to keep statements for.
+     */
+    private static final int[] IN_SIZES = {1, 4, 16, 32, 64, MAX_BATCH_LOAD};
+    /**
+     * Processed SQL of scripts with an expanded {@code IN (?)} list, by script and size.
+     */
+    private final Map<String, String> inShapes = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Search by UUID if provided, or fall back to entity name, NEVER DO BOTH. Then by type.
+     */
+    private static int queryShape(ProviderQuery query) {
+        int shape = 0;
+        if (query.getUUIDString() != null) {
+            shape = QUERY_BY_UUID;
+        } else if (query.name != null && !query.noNameChk) {
+            shape = query.likeName ? QUERY_LIKE_NAME : QUERY_BY_NAME;
         }
-        try {
-            //Worlds
-            rs = loadCategoriesList.executeQuery();
-            categoryMetaMap.clear();
-            while (rs.next()) {
-                CategoryMeta cm = new CategoryMeta(
-                        rs.getInt("categoryId"),
-                        rs.getString("category"),
-                        rs.getString("statwrapper"));
-                categoryMetaMap.put(rs.getString("category"), cm);
-            }
-            rs.close();
-        } catch (SQLException e) {
-            this.platform.mysqlError(e, SQL_LOAD_CATEGORIES);
+        if (query.type != null) {
+            shape |= QUERY_TYPE;
         }
-        try {
-            //Worlds
-            rs = loadStatisticsList.executeQuery();
-            statisticMetaMap.clear();
-            while (rs.next()) {
-                StatisticMeta sm = new StatisticMeta(
-                        rs.getInt("statisticId"),
-                        rs.getString("statistic"),
-                        rs.getString("name"),
-                        Formatting.valueOf(rs.getString("formatting")));
-                statisticMetaMap.put(rs.getString("statistic"), sm);
-            }
-            rs.close();
+        return shape;
+    }
 
-        } catch (SQLException e) {
-            this.platform.mysqlError(e, SQL_LOAD_STATISTICS);
+    private String querySQL(int shape) {
+        String sql = queryShapes[shape];
+        if (sql != null) {
+            return sql;
         }
-
+        sql = "SELECT `entityId`,`name`,`type`,`uuid` FROM `${PREFIX}_entity` WHERE ";
+        switch (shape & QUERY_LOOKUP) {
+            case QUERY_BY_UUID:
+                sql += "`uuid`=? ";
+                break;
+            case QUERY_BY_NAME:
+                sql += "`name`=? ";
+                break;
+            case QUERY_LIKE_NAME:
+                sql += "`name` LIKE ? ";
+                break;
+        }
+        if ((shape & QUERY_TYPE) != 0) {
+            sql += ((shape & QUERY_LOOKUP) != 0 ? "AND " : "") + "`type`=? ";
+        }
+        sql = processSQL(sql);
+        queryShapes[shape] = sql;
+        return sql;
     }
 
     @Override
@@ -243,75 +403,66 @@ public abstract class JDBCStatDataProvider extends JDBCDataSource implements ISt
             ) {
             throw new IllegalStateException("Invalid ProviderQuery passed.");
         }
-        String sql = "SELECT `entityId`,`name`,`type`,`uuid` FROM `${PREFIX}_entity` WHERE ";
-        boolean addAnd = false;
-
-        //Search by UUID if provided, or fall back to player name, NEVER DO BOTH
-        if (query.getUUIDString() != null) {
-            if (addAnd) {
-                sql += "AND ";
-            }
-            sql += "`uuid`=? ";
-            addAnd = true;
-        } else if (query.name != null && !query.noNameChk) {
-            if (query.likeName) {
-                sql += "`name` LIKE ? ";
-                addAnd = true;
-            } else {
-                sql += "`name`=? ";
-                addAnd = true;
-            }
-        }
-
-        if (query.type != null) {
-            if (addAnd) {
-                sql += "AND ";
-            }
-            sql += "`type`=? ";
-            addAnd = true;
-        }
+        int shape = queryShape(query);
+        String sql = querySQL(shape);
 
+        ConnectionPool.Handle h = null;
         try {
-            PreparedStatement qryStmt = connection.prepareStatement(processSQL(sql));
+            h = pool.acquire();
+            PreparedStatement qryStmt = h.prepareSQL(sql);
             int colId = 1;
-            if (query.getUUIDString() != null) {
-                qryStmt.setString(colId, query.getUUIDString());
-                colId++;
-            } else if (query.name != null) {
-                String sqlName = (query.likeName ? "%" : "") + query.name + (query.likeName ? "%" : "");
-                qryStmt.setString(colId, sqlName);
-                colId++;
-            }
-            if (query.type != null) {
+            switch (shape & QUERY_LOOKUP) {
+                case QUERY_BY_UUID:
+                    qryStmt.setString(colId++, query.getUUIDString());
+                    break;
+                case QUERY_BY_NAME:
+                    qryStmt.setString(colId++, query.name);
+                    break;
+                case QUERY_LIKE_NAME:
+                    qryStmt.setString(colId++, "%" + query.name + "%");
+                    break;
+            }
+            if ((shape & QUERY_TYPE) != 0) {
                 qryStmt.setString(colId, query.type);
-                colId++;
             }
 
             ResultSet rs = qryStmt.executeQuery();
             List<ProviderQueryResult> results = new ArrayList<ProviderQueryResult>();
-            while (rs.next()) {
-                results.add(new ProviderQueryResult(
-                        rs.getInt("entityId"),
-                        rs.getString("name"),
-                        rs.getString("type"),
-                        rs.getString("uuid") == null ? null : MojangWebAPI.expandUUID(rs.getString("uuid"))));
+            try {
+                while (rs.next()) {
+                    results.add(new ProviderQueryResult(
+                            rs.getInt("entityId"),
+                            rs.getString("name"),
+                            rs.getString("type"),
+                            rs.getString("uuid") == null ? null : MojangWebAPI.expandUUID(rs.getString("uuid"))));
+                }
+            } finally {
+                rs.close();
             }
-            rs.close();
             return results.toArray(new ProviderQueryResult[0]);
 
         } catch (SQLException e) {
             platform.mysqlError(e, "AUTOGEN: " + sql);
+        } finally {
+            if (h != null) {
+                pool.release(h);
+            }
         }
         return new ProviderQueryResult[0];
     }
 
     @Override
     public EntityStatBlob pullEntityBlob(ProviderQuery query) {
+        if (!query.create && negativeCache.isMissing(query)) {
+            return null;
+        }
+        ConnectionPool.Handle h = null;
         try {
             if (!checkConnection()) {
                 platform.getLogger().severe("Database connection error!");
                 return null;
             }
+            h = pool.acquire();
             platform.getLogger().log(Level.INFO, "Requesting data for {0}", query);
             long t1 = (new Date()).getTime();
             ProviderQueryResult result = getSingleEntity(query);
@@ -320,37 +471,21 @@ public abstract class JDBCStatDataProvider extends JDBCDataSource implements ISt
             ResultSet rs;
 
             if (result != null) {
-                if(!result.name.equals(query.name)){
-                    updateEntityName.setString(1,query.name);
-                    updateEntityName.setString(2,result.asProviderQuery().getUUIDString());
-                    updateEntityName.execute();
-                }
-                esb = new EntityStatBlob(query.name, result.dbid, result.type, result.uuid, this);//Create the damn esb
+                esb = entityBlob(h, query, result);
                 // load all stats data
+                PreparedStatement loadEntityData = h.prepare(SQL_LOAD_ENTITY_DATA);
                 loadEntityData.setInt(1, esb.getEntityID());
                 rs = loadEntityData.executeQuery();
 
                 while (rs.next()) {
                     // `domain`,`world`,`category`,`statistic`,`value`
-                    IStat ps = esb.getStat(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4));
-                    ps.setValue(rs.getInt(5));
-                    ps.clearArchive();
+                    addLoaded(esb, rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getInt(5));
                 }
                 rs.close();
             } else if (result == null && query.create) {
-                try{
-                    saveEntity.setString(1, query.name);
-                    saveEntity.setString(2, query.type);
-                    saveEntity.setString(3, query.getUUIDString());
-                    saveEntity.executeUpdate();
-                    rs = saveEntity.getGeneratedKeys();
-                    rs.next();// load player id
-                    // make the player object, close out result set.
-                    esb = new EntityStatBlob(query.name, rs.getInt(1), query.type, query.getUUID(), this);
-                    rs.close();
-                }catch(SQLException e){
-                    platform.mysqlError(e, SQL_SAVE_ENTITY);
-                }
+                esb = createEntity(h, query);
+            } else {
+                negativeCache.addMissing(query);
             }
             //Didn't get a esb, kill it.
             if (esb == null) {
@@ -362,10 +497,246 @@ public abstract class JDBCStatDataProvider extends JDBCDataSource implements ISt
             return esb;
         } catch (SQLException e) {
             platform.mysqlError(e, SQL_LOAD_ENTITY_DATA);
+        } finally {
+            if (h != null) {
+                pool.release(h);
+            }
         }
         return null;
     }
 
+    /**
+     * Queries with a UUID are resolved with one entity query, and their stats read with one query ordered by entity,
+     * for every {@link #MAX_BATCH_LOAD} entities. Queries without one are loaded by {@link #pullEntityBlob(ProviderQuery)}.
+     */
+    @Override
+    public Map<ProviderQuery, EntityStatBlob> pullEntityBlobs(Collection<ProviderQuery> queries) {
+        Map<ProviderQuery, EntityStatBlob> blobs = new HashMap<ProviderQuery, EntityStatBlob>();
+        List<ProviderQuery> batch = new ArrayList<ProviderQuery>();
+        for (ProviderQuery query : queries) {
+            if (!query.create && negativeCache.isMissing(query)) {
+                continue;
+            }
+            if (query.getUUIDString() == null) {
+                EntityStatBlob blob = pullEntityBlob(query);
+                if (blob != null) {
+                    blobs.put(query, blob);
+                }
+                continue;
+            }
+            batch.add(query);
+            if (batch.size() == MAX_BATCH_LOAD) {
+                pullBatch(batch, blobs);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            pullBatch(batch, blobs);
+        }
+        return blobs;
+    }
+
+    private void pullBatch(List<ProviderQuery> batch, Map<ProviderQuery, EntityStatBlob> blobs) {
+        ConnectionPool.Handle h = null;
+        String script = SQL_LOAD_ENTITIES;
+        try {
+            if (!checkConnection()) {
+                platform.getLogger().severe("Database connection error!");
+                return;
+            }
+            h = pool.acquire();
+            long t1 = System.currentTimeMillis();
+
+            //Resolve every entity in one go
+            Map<String, ProviderQueryResult> found = new HashMap<String, ProviderQueryResult>();
+            int size = inSize(batch.size());
+            PreparedStatement loadEntities = prepareIn(h, SQL_LOAD_ENTITIES, size);
+            for (int i = 0; i < size; i++) {
+                //Padded with the last UUID
+                loadEntities.setString(i + 1, batch.get(Math.min(i, batch.size() - 1)).getUUIDString());
+            }
+            ResultSet rs = loadEntities.executeQuery();
+            try {
+                while (rs.next()) {
+                    ProviderQueryResult result = new ProviderQueryResult(
+                            rs.getInt("entityId"),
+                            rs.getString("name"),
+                            rs.getString("type"),
+                            rs.getString("uuid") == null ? null : MojangWebAPI.expandUUID(rs.getString("uuid")));
+                    found.put(result.type + "/" + result.uuid, result);
+                }
+            } finally {
+                rs.close();
+            }
+
+            Map<ProviderQuery, EntityStatBlob> loaded = new HashMap<ProviderQuery, EntityStatBlob>();
+            Map<Integer, EntityStatBlob> byId = new HashMap<Integer, EntityStatBlob>();
+            for (ProviderQuery query : batch) {
+                ProviderQueryResult result = found.get(query.type + "/" + query.getUUID());
+                if (result != null) {
+                    EntityStatBlob esb = entityBlob(h, query, result);
+                    loaded.put(query, esb);
+                    byId.put(esb.getEntityID(), esb);
+                } else if (query.create) {
+                    EntityStatBlob esb = createEntity(h, query);
+                    if (esb != null) {
+                        loaded.put(query, esb);
+                    }
+                } else {
+                    negativeCache.addMissing(query);
+                }
+            }
+
+            //Then stream the stats of all of them
+            if (!byId.isEmpty()) {
+                script = SQL_LOAD_ENTITIES_DATA;
+                List<Integer> ids = new ArrayList<Integer>(byId.keySet());
+                size = inSize(ids.size());
+                PreparedStatement loadData = prepareIn(h, SQL_LOAD_ENTITIES_DATA, size);
+                for (int i = 0; i < size; i++) {
+                    loadData.setInt(i + 1, ids.get(Math.min(i, ids.size() - 1)));
+                }
+                rs = loadData.executeQuery();
+                try {
+                    EntityStatBlob esb = null;
+                    while (rs.next()) {
+                        // `entityId`,`domain`,`world`,`category`,`statistic`,`value`
+                        int entityId = rs.getInt(1);
+                        if (esb == null || esb.getEntityID() != entityId) {
+                            esb = byId.get(entityId);
+                        }
+                        addLoaded(esb, rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getInt(6));
+                    }
+                } finally {
+                    rs.close();
+                }
+            }
+
+            for (Entry<ProviderQuery, EntityStatBlob> e : loaded.entrySet()) {
+                platform.loadEvent(e.getValue());
+                blobs.put(e.getKey(), e.getValue());
+            }
+            platform.getLogger().log(Level.CONFIG, "time taken to retrieve {0} entities: {1} Milliseconds", new Object[]{batch.size(), System.currentTimeMillis() - t1});
+        } catch (SQLException e) {
+            platform.mysqlError(e, script);
+        } finally {
+            if (h != null) {
+                pool.release(h);
+            }
+        }
+    }
+
+    /**
+     * @return the size of {@code IN (?)} list to use for a number of values, the unused parameters are bound to repeats of the last value
+     */
+    private static int inSize(int values) {
+        for (int size : IN_SIZES) {
+            if (values <= size) {
+                return size;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Get the handle's statement for a script with its single {@code IN (?)} expanded to take a number of parameters.
+     * Pass a size from {@link #inSize(int)}, so the handle keeps only a few statements per script.
+     */
+    private PreparedStatement prepareIn(ConnectionPool.Handle h, String script, int params) throws SQLException {
+        String key = script + "#" + params;
+        String sql = inShapes.get(key);
+        if (sql == null) {
+            StringBuilder in = new StringBuilder("IN (?");
+            for (int i = 1; i < params; i++) {
+                in.append(",?");
+            }
+            sql = readSQLFile(scriptSuffix, script).replace("IN (?)", in.append(')').toString());
+            inShapes.put(key, sql);
+        }
+        return h.prepareSQL(sql);
+    }
+
+    /**
+     * Make the blob for an entity found in the database, updating its stored name if the query has a new one.
+     */
+    private EntityStatBlob entityBlob(ConnectionPool.Handle h, ProviderQuery query, ProviderQueryResult result) throws SQLException {
+        if (query.name == null) {
+            return new EntityStatBlob(result.name, result.dbid, result.type, result.uuid, this);
+        }
+        if (!query.name.equals(result.name)) {
+            PreparedStatement updateEntityName = h.prepare(SQL_UPDATE_ENTITY);
+            updateEntityName.setString(1, query.name);
+            updateEntityName.setString(2, result.asProviderQuery().getUUIDString());
+            updateEntityName.execute();
+        }
+        return new EntityStatBlob(query.name, result.dbid, result.type, result.uuid, this);
+    }
+
+    /**
+     * Insert a new entity.
+     *
+     * @return its empty blob, or null if the insert failed
+     */
+    /**
+     * Add a loaded stat to a blob. It is kept as a packed value, so its {@link IStat} is only created if it is asked for,
+     * unless its metadata has no ids that pack. Either way it is not queued for archive.
+     */
+    private void addLoaded(EntityStatBlob esb, String domain, String world, String category, String statistic, int value) {
+        long packed = pack(new StatKey(domain, world, category, statistic), false);
+        if (packed == UNRESOLVED) {
+            esb.addStat(new StaticStat(domain, world, category, statistic, value));
+        } else {
+            esb.putLoaded(packed, value, this);
+        }
+    }
+
+    private EntityStatBlob createEntity(ConnectionPool.Handle h, ProviderQuery query) {
+        try {
+            PreparedStatement saveEntity = h.prepare(SQL_SAVE_ENTITY, Statement.RETURN_GENERATED_KEYS);
+            saveEntity.setString(1, query.name);
+            saveEntity.setString(2, query.type);
+            saveEntity.setString(3, query.getUUIDString());
+            saveEntity.executeUpdate();
+            ResultSet rs = saveEntity.getGeneratedKeys();
+            rs.next();// load player id
+            // make the player object, close out result set.
+            EntityStatBlob esb = new EntityStatBlob(query.name, rs.getInt(1), query.type, query.getUUID(), this);
+            rs.close();
+            negativeCache.invalidate(query);
+            return esb;
+        } catch (SQLException e) {
+            platform.mysqlError(e, SQL_SAVE_ENTITY);
+        }
+        return null;
+    }
+
+    @Override
+    public long pack(StatKey key, boolean create) {
+        if (key.getDomain() == null || key.getWorld() == null || key.getCategory() == null) {
+            return UNRESOLVED;
+        }
+        DomainMeta domain = getDomain(key.getDomain(), create);
+        WorldMeta world = getWorld(key.getWorld(), create);
+        CategoryMeta category = getCategory(key.getCategory(), create);
+        StatisticMeta statistic = getStatistic(key.getStatistic(), create);
+        if (domain == null || world == null || category == null || statistic == null) {
+            return UNRESOLVED;
+        }
+        return Packing.pack(domain.getDbId(), world.getDbId(), category.getDbId(), statistic.getDbId());
+    }
+
+    @Override
+    public StatKey unpack(long packed) {
+        String domain = domains.registry.getTag(Packing.domainId(packed));
+        String world = worlds.registry.getTag(Packing.worldId(packed));
+        String category = categories.registry.getTag(Packing.categoryId(packed));
+        String statistic = statistics.registry.getTag(Packing.statisticId(packed));
+        if (domain == null || world == null || category == null || statistic == null) {
+            return null;
+        }
+        return new StatKey(domain, world, category, statistic);
+    }
+
     protected ProviderQueryResult getSingleEntity(ProviderQuery query) throws IllegalStateException {
         ProviderQueryResult[] results = queryDatabase(query);
         if (results.length > 1) {
@@ -376,7 +747,21 @@ public abstract class JDBCStatDataProvider extends JDBCDataSource implements ISt
 
     @Override
     public boolean hasEntityBlob(ProviderQuery query) {
-        return queryDatabase(query).length > 1;
+        if (negativeCache.isMissing(query)) {
+            return false;
+        }
+        if (queryDatabase(query).length > 0) {
+            return true;
+        }
+        negativeCache.addMissing(query);
+        return false;
+    }
+
+    /**
+     * @return entities recently found not to exist
+     */
+    public NegativeCache getNegativeCache() {
+        return negativeCache;
     }
 
     @Override
@@ -384,26 +769,195 @@ public abstract class JDBCStatDataProvider extends JDBCDataSource implements ISt
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
     }
 
+    /**
+     * Open the journal and queue any changes left in it for the next flush.
+     * They stay in the journal until that flush commits them.
+     */
+    private void openJournal() {
+        try {
+            journal = new StatJournal(new File(platform.getDataFolder(), JOURNAL_FILE), 1 << 20);
+            List<StatBlobRecord> replayed = journal.replay(this);
+            if (!replayed.isEmpty()) {
+                platform.getLogger().log(Level.INFO, "Replaying {0} unsaved records from the journal", replayed.size());
+                retryRecords.addAll(replayed);
+            }
+        } catch (IOException e) {
+            journal = null;
+            platform.getLogger().log(Level.SEVERE, "Could not open stat journal, unsaved stats will be lost on a crash", e);
+        }
+    }
+
     @Override
     public void pushEntityBlob(EntityStatBlob player) {
+        StatBlobRecord copy = player.cloneForArchive();
+        if (copy.stats.isEmpty() && copy.files.isEmpty()) {
+            return;
+        }
+        queueRecord(copy);
+    }
 
-        synchronized (this.writeCache) {
+    /**
+     * Journal a record and put it on the write queue.
+     *
+     * @param copy
+     */
+    private void queueRecord(StatBlobRecord copy) {
+        StatJournal j = this.journal;
+        if (j == null) {
+            this.writeQueue.offer(copy);
+            return;
+        }
+        //Journal and queue together, so a checkpoint never drops an entry that is not yet queued
+        synchronized (j) {
+            try {
+                copy.journalEnd = j.append(copy, this);
+            } catch (IOException e) {
+                platform.getLogger().log(Level.WARNING, "Failed to journal stats for entity id " + copy.entityId, e);
+            } catch (IllegalArgumentException e) {
+                platform.getLogger().log(Level.WARNING, "Failed to journal stats for entity id " + copy.entityId, e);
+            }
+            this.writeQueue.offer(copy);
+        }
+    }
 
-            StatBlobRecord copy = player.cloneForArchive();
+    /**
+     * The changes are journaled and queued like a blob's, the entity is found or created when they are written.
+     */
+    @Override
+    public void pushEntityChanges(ProviderQuery query, Collection<IStat> changes) {
+        if (!changes.isEmpty()) {
+            EntityChanges record = new EntityChanges(query);
+            record.stats.addAll(changes);
+            queueRecord(record);
+        }
+    }
 
-            if (!this.writeCache.containsKey(player.getName())) {
-                this.writeCache.put(copy.entityId, copy);
+    /**
+     * Take the next record to write, retried records first, called by the flush runner while holding flushLock.
+     * Changes pushed without a blob have their entity found or created here, so they are written in the order they were queued
+     * and the journal commit order holds.
+     * Changes whose entity does not exist and may not be created, or could not be created while the connection is up, are dropped.
+     *
+     * @return the record, or null if there are none left, or the entity of the next one cannot be resolved until the connection is back.
+     * It is then kept at the front.
+     */
+    private StatBlobRecord nextRecord() {
+        StatBlobRecord record;
+        while ((record = retryRecords.poll()) != null || (record = writeQueue.poll()) != null) {
+            if (!(record instanceof EntityChanges)) {
+                return record;
             }
+            EntityChanges changes = (EntityChanges) record;
+            int entityId;
+            try {
+                entityId = resolveEntityId(changes.query);
+            } catch (IllegalStateException e) {
+                platform.getLogger().log(Level.WARNING, "Dropped changes to {0} stats, {1} matches more than one entity", new Object[]{changes.stats.size(), changes.query});
+                continue;
+            }
+            if (entityId == NO_ENTITY) {
+                platform.getLogger().log(Level.WARNING, "Dropped changes to {0} stats, {1} does not exist and may not be created", new Object[]{changes.stats.size(), changes.query});
+                continue;
+            }
+            if (entityId < 0) {
+                if (checkConnection()) {
+                    platform.getLogger().log(Level.WARNING, "Dropped changes to {0} stats, {1} could not be created", new Object[]{changes.stats.size(), changes.query});
+                    continue;
+                }
+                retryRecords.addFirst(changes);
+                platform.getLogger().warning("Lost connection while saving, will try again later");
+                return null;
+            }
+            StatBlobRecord resolved = new StatBlobRecord(entityId);
+            resolved.stats.addAll(changes.stats);
+            resolved.journalEnd = changes.journalEnd;
+            return resolved;
         }
+        return null;
+    }
+
+    /**
+     * Returned by {@link #resolveEntityId(ProviderQuery)} for an entity that does not exist and whose query may not create it.
+     */
+    private static final int NO_ENTITY = -2;
 
+    /**
+     * @return the id of the entity a query finds, creating it if it does not exist and the query allows it,
+     * {@link #NO_ENTITY} if it does not, or -1 if the database could not be reached
+     */
+    private int resolveEntityId(ProviderQuery query) {
+        ConnectionPool.Handle h = null;
+        //queryDatabase finds nothing on an error, which must not be taken for a missing entity
+        if (!checkConnection()) {
+            return -1;
+        }
+        try {
+            h = pool.acquire();
+            ProviderQueryResult result = getSingleEntity(query);
+            if (result != null) {
+                return result.dbid;
+            }
+            if (!query.create) {
+                return NO_ENTITY;
+            }
+            EntityStatBlob esb = createEntity(h, query);
+            return esb != null ? esb.getEntityID() : -1;
+        } catch (SQLException e) {
+            platform.mysqlError(e, SQL_SAVE_ENTITY);
+            return -1;
+        } finally {
+            if (h != null) {
+                pool.release(h);
+            }
+        }
+    }
+
+    /**
+     * Mark a committed chunk in the journal, so a crash before the next checkpoint does not replay it.
+     * Records are committed in the order they were journaled, so the last journaled record of the chunk marks the rest.
+     */
+    private void commitJournal(List<StatBlobRecord> chunk) {
+        StatJournal j = this.journal;
+        if (j == null) {
+            return;
+        }
+        int end = -1;
+        for (StatBlobRecord r : chunk) {
+            end = Math.max(end, r.journalEnd);
+        }
+        if (end > 0) {
+            j.commit(end);
+        }
+    }
+
+    /**
+     * Reset the journal if everything in it has been committed, then grow and write it out here, so appends on the main thread do not.
+     */
+    private void checkpointJournal() {
+        StatJournal j = this.journal;
+        if (j == null) {
+            return;
+        }
+        synchronized (j) {
+            if (retryRecords.isEmpty() && writeQueue.isEmpty()) {
+                j.reset();
+            }
+        }
+        try {
+            j.reserve();
+            j.force();
+        } catch (IOException e) {
+            platform.getLogger().log(Level.WARNING, "Failed to grow stat journal", e);
+        }
     }
     /**
      * Runner used to flush to database async.
+     * Only one flush runs at a time, records are taken off the queue one by one so pushEntityBlob never waits on it.
      */
     private Runnable flush = new Runnable() {
         @Override
         public void run() {
-            synchronized (writeCache) {
+            synchronized (flushLock) {
                 try {
                     keepAlive.execute();
                 } catch (SQLException e1) {
@@ -411,131 +965,286 @@ public abstract class JDBCStatDataProvider extends JDBCDataSource implements ISt
 
                 if (!checkConnection()) {
                     platform.getLogger().warning("Could not restablish connection, will try again later, WARNING: CACHE WILL GROW WHILE THIS HAPPENS");
+                    return;
+                }
+                platform.getLogger().config("Saving to database");
+                if (config.flushBatchSize > 0) {
+                    flushBatched(config.flushBatchSize);
                 } else {
-                    platform.getLogger().config("Saving to database");
-                    for (Entry<Integer, StatBlobRecord> entry : writeCache
-                            .entrySet()) {
-
-                        StatBlobRecord updateRecord = entry.getValue();
-                        IStat stat = null;
-                        try {
-                            saveEntityData.clearBatch();
-                            for (Iterator<IStat> it = updateRecord.stats.iterator(); it.hasNext();) {
-                                stat = it.next();
-                                saveEntityData.setInt(1, updateRecord.entityId);
-                                saveEntityData.setInt(2, getDomain(stat.getDomain(), true).getDbId());
-                                saveEntityData.setInt(3, getWorld(stat.getWorld(), true).getDbId());
-                                saveEntityData.setInt(4, getCategory(stat.getCategory(), true).getDbId());
-                                saveEntityData.setInt(5, getStatistic(stat.getStatistic(), true).getDbId());
-                                saveEntityData.setInt(6, stat.getValue());
-                                saveEntityData.addBatch();
-                            }
-                            saveEntityData.executeBatch();
-
-                            for (DocumentFileRef ref : updateRecord.files) {
-                                try {
-                                    DocumentFile newDoc = pushDocument(updateRecord.entityId, ref.getRef());
-                                    ref.getRef().invalidateDocument();
-                                    ref.setRef(newDoc);
-                                } catch (RevisionMismatchException ex) {
-                                    ref.invalidateRef();
-                                    platform.getLogger().log(Level.SEVERE, "Document {0}:{1} failed to save.", new Object[]{ref.getRef().getDomain(), ref.getRef().getKey()});
-                                    platform.getLogger().severe("Another process has stored a new revision at this address.");
-                                    platform.getLogger().severe("No Revision Merge strategy found. Changes not saved.");
-                                } catch (DocumentTooLargeException e) {
-                                    platform.getLogger().log(Level.SEVERE, "Document {0}:{1} failed to save.", new Object[]{ref.getRef().getDomain(), ref.getRef().getKey()});
-                                    platform.getLogger().severe("The document was too large to save to the database.");
-                                }
-                            }
-
-                        } catch (SQLException e) {
-                            platform.getLogger().log(Level.WARNING, "entity id: {0}}", new Object[]{updateRecord.entityId});
-                            platform.getLogger().log(Level.WARNING, "domain: {0} :: {1}", new Object[]{stat.getDomain(), getDomain(stat.getDomain(), true).getDbId()});
-                            platform.getLogger().log(Level.WARNING, "world: {0} :: {1}", new Object[]{stat.getWorld(), getWorld(stat.getWorld(), true).getDbId()});
-                            platform.getLogger().log(Level.WARNING, "category: {0} :: {1}", new Object[]{stat.getCategory(), getCategory(stat.getCategory(), true).getDbId()});
-                            platform.getLogger().log(Level.WARNING, "statistic: {0} :: {1}", new Object[]{stat.getStatistic(), getStatistic(stat.getStatistic(), true).getDbId()});
-                            platform.getLogger().log(Level.WARNING, "Value: {0}", stat.getValue());
-                            platform.mysqlError(e, SQL_SAVE_STAT);
-                            checkConnection();
-                        }
-                    }
-                    platform.getLogger().config("Clearing write cache");
-                    writeCache.clear();
+                    flushPerRecord();
                 }
+                checkpointJournal();
+                onFlushed();
             }
 
         }
     };
 
-    @Override
-    public void flushSync() {
-        this.platform.getLogger().info("Flushing in main thread! Game will lag!");
-        this.flush.run();
-        this.platform.getLogger().info("Flushed!");
+    /**
+     * Write each record in its own batch, committing every statement.
+     */
+    private void flushPerRecord() {
+        StatBlobRecord record;
+        while ((record = nextRecord()) != null) {
+            if (!saveRecord(record)) {
+                //Keep it at the front so later records for the same entity are not written before it
+                retryRecords.addFirst(record);
+                platform.getLogger().warning("Lost connection while saving, will try again later");
+                return;
+            }
+        }
     }
 
-    @Override
-    public void flush() {
+    /**
+     * Write records from many entities in one batch per chunk, each chunk is committed as a single transaction.
+     * If a chunk fails while the connection is still up, its records are written one at a time instead so a single bad row does not lose the rest.
+     *
+     * @param chunkRows rows to gather before writing a chunk, a record is never split between chunks
+     */
+    private void flushBatched(int chunkRows) {
+        List<StatBlobRecord> chunk = new ArrayList<StatBlobRecord>();
+        StatBlobRecord record;
+        while (true) {
+            chunk.clear();
+            int rows = 0;
+            while (rows < chunkRows && (record = nextRecord()) != null) {
+                chunk.add(record);
+                rows += record.stats.size();
+            }
+            if (chunk.isEmpty()) {
+                return;
+            }
 
-        new Thread(this.flush).start();
+            if (writeChunk(chunk)) {
+                for (StatBlobRecord r : chunk) {
+                    saveDocuments(r);
+                }
+                continue;
+            }
+
+            int failedAt = 0;
+            if (checkConnection()) {
+                while (failedAt < chunk.size() && saveRecord(chunk.get(failedAt))) {
+                    failedAt++;
+                }
+            }
+            if (failedAt < chunk.size()) {
+                //Keep the unwritten records at the front, in order
+                for (int i = chunk.size() - 1; i >= failedAt; i--) {
+                    retryRecords.addFirst(chunk.get(i));
+                }
+                platform.getLogger().warning("Lost connection while saving, will try again later");
+                return;
+            }
+        }
     }
 
-    @Override
-    public DomainMeta getDomain(String gameTag, boolean create) {
-        String qGameTag = sanitizeTag(gameTag);
-        if (!domainMetaMap.containsKey(qGameTag) && create) {
-            try {
+    /**
+     * Write the stats of several records as one transaction.
+     * Metadata missing for any of the stats is created first, one batch per kind, before the transaction starts,
+     * so a rollback never undoes a metadata insert that is already cached.
+     *
+     * @param chunk
+     * @return true if the chunk was committed
+     */
+    private boolean writeChunk(List<StatBlobRecord> chunk) {
+        ConnectionPool.Handle h;
+        if (!resolveMetadata(chunk)) {
+            return false;
+        }
+        try {
+            h = pool.acquire();
+        } catch (SQLException e) {
+            platform.mysqlError(e, SQL_SAVE_STAT);
+            return false;
+        }
 
-                saveDomain.setString(1, qGameTag);
-                saveDomain.execute();
-                ResultSet rs = saveDomain.getGeneratedKeys();
-                rs.next();
-                domainMetaMap.put(gameTag, new DomainMeta(rs.getInt(1), gameTag));
-                rs.close();
+        Connection connection = h.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            StatRows rows = new StatRows(h);
+            for (StatBlobRecord r : chunk) {
+                for (IStat stat : r.stats) {
+                    rows.add(r.entityId, stat);
+                }
+            }
+            rows.execute();
+            connection.commit();
+            commitJournal(chunk);
+            return true;
+        } catch (SQLException e) {
+            platform.mysqlError(e, SQL_SAVE_STAT);
+            try {
+                connection.rollback();
             } catch (SQLException ex) {
-                platform.mysqlError(ex, SQL_SAVE_DOMAIN);
+                platform.getLogger().log(Level.WARNING, "Failed to roll back stat batch", ex);
             }
+            return false;
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException ex) {
+                platform.getLogger().log(Level.WARNING, "Failed to restore autocommit", ex);
+            }
+            pool.release(h);
+        }
+    }
+
+    /**
+     * Rows of a chunk being written. Stats recording a delta are added to the stored value with {@link #SQL_ADD_STAT},
+     * anything else overwrites it with {@link #SQL_SAVE_STAT}. Each statement's update clause has no parameters,
+     * so the MySQL driver can still rewrite its batch as multi-row inserts.
+     * Deltas are sent before sets, a delta queued after a set of the same stat sends both batches first so the order is kept.
+     */
+    private final class StatRows {
+
+        private final PreparedStatement set;
+        private final PreparedStatement add;
+        private boolean hasSet = false;
+        private boolean hasAdd = false;
+        /**
+         * Hashes of the stats in the set batch, a collision only sends the batches early.
+         */
+        private final Set<Long> setKeys = new HashSet<Long>();
+
+        StatRows(ConnectionPool.Handle h) throws SQLException {
+            this.set = h.prepare(SQL_SAVE_STAT);
+            this.add = h.prepare(SQL_ADD_STAT);
+            this.set.clearBatch();
+            this.add.clearBatch();
         }
 
-        return domainMetaMap.get(qGameTag);
+        void add(int entityId, IStat stat) throws SQLException {
+            boolean absolute = !(stat instanceof StaticStat) || ((StaticStat) stat).isAbsolute();
+            int domainId = getDomain(stat.getDomain(), true).getDbId();
+            int worldId = getWorld(stat.getWorld(), true).getDbId();
+            int categoryId = getCategory(stat.getCategory(), true).getDbId();
+            int statisticId = getStatistic(stat.getStatistic(), true).getDbId();
+            long key = Packing.pack(domainId, worldId, categoryId, statisticId) ^ (entityId * 0x9E3779B97F4A7C15L);
+            PreparedStatement stmt;
+            if (absolute) {
+                stmt = this.set;
+                this.hasSet = true;
+                this.setKeys.add(key);
+            } else {
+                if (!this.setKeys.isEmpty() && this.setKeys.contains(key)) {
+                    execute();
+                }
+                stmt = this.add;
+                this.hasAdd = true;
+            }
+            stmt.setInt(1, entityId);
+            stmt.setInt(2, domainId);
+            stmt.setInt(3, worldId);
+            stmt.setInt(4, categoryId);
+            stmt.setInt(5, statisticId);
+            stmt.setInt(6, absolute ? stat.getValue() : ((StaticStat) stat).getDelta());
+            stmt.addBatch();
+        }
+
+        void execute() throws SQLException {
+            if (this.hasAdd) {
+                this.add.executeBatch();
+            }
+            if (this.hasSet) {
+                this.set.executeBatch();
+            }
+            this.hasAdd = false;
+            this.hasSet = false;
+            this.setKeys.clear();
+        }
     }
 
-    @Override
-    public WorldMeta getWorld(String gameTag, boolean create) {
+    /**
+     * Write one record, called by the flush runner while holding flushLock.
+     * The stats are written as one transaction, deltas must never be applied twice.
+     *
+     * @param updateRecord
+     * @return false if the record could not be written and the connection is down
+     */
+    private boolean saveRecord(StatBlobRecord updateRecord) {
+        if (!writeChunk(Collections.singletonList(updateRecord))) {
+            platform.getLogger().log(Level.WARNING, "Failed to save {0} stats for entity id: {1}", new Object[]{updateRecord.stats.size(), updateRecord.entityId});
+            return checkConnection();
+        }
+        saveDocuments(updateRecord);
+        return true;
+    }
 
-        if (!worldMetaMap.containsKey(gameTag) && create) {
+    private void saveDocuments(StatBlobRecord updateRecord) {
+        for (DocumentFileRef ref : updateRecord.files) {
             try {
-                saveWorld.setString(1, gameTag);
-                saveWorld.setString(2, gameTag.replaceAll("_", " "));
-                saveWorld.execute();
-                ResultSet rs = saveWorld.getGeneratedKeys();
-                rs.next();
-                worldMetaMap.put(gameTag, new WorldMeta(rs.getInt(1), gameTag, gameTag.replaceAll("_", " ")));
-                rs.close();
-            } catch (SQLException ex) {
-                platform.mysqlError(ex, SQL_SAVE_WORLD + " @ " + gameTag + " cache size: " + worldMetaMap.size());
+                DocumentFile newDoc = pushDocument(updateRecord.entityId, ref.getRef());
+                ref.getRef().invalidateDocument();
+                ref.setRef(newDoc);
+            } catch (RevisionMismatchException ex) {
+                ref.invalidateRef();
+                platform.getLogger().log(Level.SEVERE, "Document {0}:{1} failed to save.", new Object[]{ref.getRef().getDomain(), ref.getRef().getKey()});
+                platform.getLogger().severe("Another process has stored a new revision at this address.");
+                platform.getLogger().severe("No Revision Merge strategy found. Changes not saved.");
+            } catch (DocumentTooLargeException e) {
+                platform.getLogger().log(Level.SEVERE, "Document {0}:{1} failed to save.", new Object[]{ref.getRef().getDomain(), ref.getRef().getKey()});
+                platform.getLogger().severe("The document was too large to save to the database.");
             }
         }
+    }
 
-        return worldMetaMap.get(gameTag);
+    /**
+     * Called at the end of every flush while still holding the flush lock, for providers that persist extra state.
+     */
+    protected void onFlushed() {
     }
 
     @Override
-    public CategoryMeta getCategory(String gameTag, boolean create) {
-        if (!categoryMetaMap.containsKey(gameTag) && create) {
+    public void flushSync() {
+        this.platform.getLogger().info("Flushing in main thread! Game will lag!");
+        this.flush.run();
+        this.platform.getLogger().info("Flushed!");
+    }
+
+    @Override
+    public void flush() {
+        this.flushScheduler.submit("flush", this.flush);
+    }
+
+    @Override
+    public void shutdown() {
+        if (!this.flushScheduler.shutdown(60, TimeUnit.SECONDS)) {
+            this.platform.getLogger().warning("Timed out waiting for flush to finish");
+        }
+        StatJournal j = this.journal;
+        if (j != null) {
             try {
-                saveCategory.setString(1, gameTag);
-                saveCategory.execute();
-                ResultSet rs = saveCategory.getGeneratedKeys();
-                rs.next();
-                categoryMetaMap.put(gameTag, new CategoryMeta(rs.getInt(1), gameTag, gameTag.replaceAll("_", " ")));
-                rs.close();
-            } catch (SQLException ex) {
-                platform.mysqlError(ex, SQL_SAVE_CATEGORY);
+                j.close();
+            } catch (IOException e) {
+                this.platform.getLogger().log(Level.WARNING, "Failed to close stat journal", e);
             }
         }
+        if (this.pool != null) {
+            this.pool.close();
+        }
+    }
 
-        return categoryMetaMap.get(gameTag);
+    /**
+     * @return scheduler running this provider's flushes
+     */
+    public FlushScheduler getFlushScheduler() {
+        return this.flushScheduler;
+    }
+
+    @Override
+    public DomainMeta getDomain(String gameTag, boolean create) {
+        return getMeta(domains, sanitizeTag(gameTag), create);
+    }
+
+    @Override
+    public WorldMeta getWorld(String gameTag, boolean create) {
+        return getMeta(worlds, gameTag, create);
+    }
+
+    @Override
+    public CategoryMeta getCategory(String gameTag, boolean create) {
+        return getMeta(categories, gameTag, create);
     }
 
     @Override
@@ -543,22 +1252,155 @@ public abstract class JDBCStatDataProvider extends JDBCDataSource implements ISt
         if (gameTag == null) {
             throw new NullPointerException();
         }
-        if (!statisticMetaMap.containsKey(gameTag) && create) {
+        return getMeta(statistics, gameTag, create);
+    }
+
+    private <T> T getMeta(MetaKind<T> kind, String tag, boolean create) {
+        T meta = kind.registry.get(tag);
+        if (meta == null && create) {
+            createMeta(kind, Collections.singletonList(tag));
+            meta = kind.registry.get(tag);
+        }
+        return meta;
+    }
+
+    /**
+     * Create the metadata of every stat in a chunk that is not cached yet, so queueing the rows never hits the database.
+     *
+     * @param chunk
+     * @return false if some could not be created
+     */
+    private boolean resolveMetadata(List<StatBlobRecord> chunk) {
+        Set<String> newDomains = new LinkedHashSet<String>();
+        Set<String> newWorlds = new LinkedHashSet<String>();
+        Set<String> newCategories = new LinkedHashSet<String>();
+        Set<String> newStatistics = new LinkedHashSet<String>();
+        for (StatBlobRecord r : chunk) {
+            for (IStat stat : r.stats) {
+                addUnknown(domains, newDomains, sanitizeTag(stat.getDomain()));
+                addUnknown(worlds, newWorlds, stat.getWorld());
+                addUnknown(categories, newCategories, stat.getCategory());
+                addUnknown(statistics, newStatistics, stat.getStatistic());
+            }
+        }
+        boolean created = newDomains.isEmpty() || createMeta(domains, newDomains);
+        created &= newWorlds.isEmpty() || createMeta(worlds, newWorlds);
+        created &= newCategories.isEmpty() || createMeta(categories, newCategories);
+        created &= newStatistics.isEmpty() || createMeta(statistics, newStatistics);
+        return created;
+    }
+
+    private static <T> void addUnknown(MetaKind<T> kind, Set<String> unknown, String tag) {
+        if (kind.registry.get(tag) == null) {
+            unknown.add(tag);
+        }
+    }
+
+    /**
+     * Create metadata for tags that are not cached. The rows are inserted in one batch, ignoring any that already exist,
+     * then read back with one query per {@link #MAX_BATCH_LOAD} tags, which also picks up rows another server created.
+     * Only one thread creates entries of a kind at a time, readers are never blocked.
+     * If the calling thread already has a transaction open the rows join it, so create metadata before opening one.
+     *
+     * @param kind
+     * @param tags
+     * @return true if every tag is now cached
+     */
+    private <T> boolean createMeta(MetaKind<T> kind, Collection<String> tags) {
+        ConnectionPool.Handle h;
+        try {
+            //Taken before the lock, a thread holding the lock never waits on the pool
+            h = pool.acquire();
+        } catch (SQLException e) {
+            platform.mysqlError(e, kind.saveScript);
+            return false;
+        }
+        synchronized (kind) {
+            List<String> unknown = kind.registry.unknown(tags);
+            if (unknown.isEmpty()) {
+                pool.release(h);
+                return true;
+            }
+            boolean transaction = false;
+            String script = kind.saveScript;
             try {
-                saveStatistic.setString(1, gameTag);
-                saveStatistic.setString(2, IdentifierService.getHumanName(gameTag));
-                saveStatistic.setString(3, Formatting.none.toString().toLowerCase());
-                saveStatistic.execute();
-                ResultSet rs = saveStatistic.getGeneratedKeys();
-                rs.next();
-                statisticMetaMap.put(gameTag, new StatisticMeta(rs.getInt(1), gameTag, gameTag.replaceAll("_", " "), Formatting.none));
-                rs.close();
-            } catch (SQLException ex) {
-                platform.mysqlError(ex, SQL_SAVE_STATISTIC);
+                Connection connection = h.getConnection();
+                transaction = connection.getAutoCommit();
+                if (transaction) {
+                    connection.setAutoCommit(false);
+                }
+                PreparedStatement save = h.prepare(kind.saveScript);
+                save.clearBatch();
+                for (String tag : unknown) {
+                    kind.bindSave(save, tag);
+                    save.addBatch();
+                }
+                save.executeBatch();
+                if (transaction) {
+                    connection.commit();
+                }
+
+                script = kind.findScript;
+                for (int i = 0; i < unknown.size(); i += MAX_BATCH_LOAD) {
+                    findMeta(h, kind, unknown.subList(i, Math.min(unknown.size(), i + MAX_BATCH_LOAD)));
+                }
+                platform.getLogger().log(Level.CONFIG, "Created {0} metadata entries with {1}", new Object[]{unknown.size(), kind.saveScript});
+                return kind.registry.unknown(unknown).isEmpty();
+            } catch (SQLException e) {
+                platform.mysqlError(e, script);
+                if (transaction) {
+                    try {
+                        h.getConnection().rollback();
+                    } catch (SQLException ex) {
+                        platform.getLogger().log(Level.WARNING, "Failed to roll back metadata batch", ex);
+                    }
+                }
+                return false;
+            } finally {
+                if (transaction) {
+                    try {
+                        h.getConnection().setAutoCommit(true);
+                    } catch (SQLException ex) {
+                        platform.getLogger().log(Level.WARNING, "Failed to restore autocommit", ex);
+                    }
+                }
+                pool.release(h);
             }
         }
+    }
 
-        return statisticMetaMap.get(gameTag);
+    /**
+     * Read the rows of some tags into the cache.
+     */
+    private <T> void findMeta(ConnectionPool.Handle h, MetaKind<T> kind, List<String> tags) throws SQLException {
+        Map<String, T> found = new HashMap<String, T>();
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        //Databases comparing tags case insensitively return the stored spelling, used for tags with no row of their own spelling
+        Map<String, String> spellings = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        int size = inSize(tags.size());
+        PreparedStatement find = prepareIn(h, kind.findScript, size);
+        for (int i = 0; i < size; i++) {
+            find.setString(i + 1, tags.get(Math.min(i, tags.size() - 1)));
+        }
+        ResultSet rs = find.executeQuery();
+        try {
+            while (rs.next()) {
+                String stored = rs.getString(kind.tagColumn);
+                found.put(stored, kind.read(rs));
+                ids.put(stored, rs.getInt(kind.idColumn));
+                if (!spellings.containsKey(stored)) {
+                    spellings.put(stored, stored);
+                }
+            }
+        } finally {
+            rs.close();
+        }
+        for (String tag : tags) {
+            String stored = found.containsKey(tag) ? tag : spellings.get(tag);
+            if (stored != null) {
+                kind.registry.put(tag, ids.get(stored), found.get(stored));
+            }
+        }
     }
 
     private String sanitizeTag(String gameTag) {
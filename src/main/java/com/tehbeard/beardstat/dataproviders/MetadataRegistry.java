@@ -0,0 +1,74 @@
+package com.tehbeard.beardstat.dataproviders;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of one kind of metadata (domains, worlds, categories or statistics), by game tag and by database id.
+ * Reads never lock, so commands and stat formatting on the main thread are not held up by a flush creating entries.
+ * Entries are only added, or all cleared when the metadata is reloaded.
+ *
+ * @author James
+ * @param <T> metadata type
+ */
+public class MetadataRegistry<T> {
+
+    private final ConcurrentMap<String, T> byTag = new ConcurrentHashMap<String, T>();
+    private final ConcurrentMap<Integer, String> tags = new ConcurrentHashMap<Integer, String>();
+
+    /**
+     * @param tag
+     * @return the metadata for a game tag, or null if not known
+     */
+    public T get(String tag) {
+        return this.byTag.get(tag);
+    }
+
+    /**
+     * @param id
+     * @return the game tag for a database id, or null if not known
+     */
+    public String getTag(int id) {
+        return this.tags.get(id);
+    }
+
+    /**
+     * @param tags
+     * @return the tags that are not known yet, in the order given
+     */
+    public List<String> unknown(Collection<String> tags) {
+        List<String> unknown = new ArrayList<String>();
+        for (String tag : tags) {
+            if (!this.byTag.containsKey(tag)) {
+                unknown.add(tag);
+            }
+        }
+        return unknown;
+    }
+
+    /**
+     * Add an entry. The id maps back to the first tag added for it, when a case insensitive database
+     * stores several tags as one row.
+     *
+     * @param tag
+     * @param id
+     * @param meta
+     */
+    public void put(String tag, int id, T meta) {
+        //Id first, so a blob packed with the new id can always be unpacked
+        this.tags.putIfAbsent(id, tag);
+        this.byTag.put(tag, meta);
+    }
+
+    public void clear() {
+        this.byTag.clear();
+        this.tags.clear();
+    }
+
+    public int size() {
+        return this.byTag.size();
+    }
+}
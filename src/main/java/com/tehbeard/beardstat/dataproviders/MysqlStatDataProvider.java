@@ -11,7 +11,6 @@ import com.tehbeard.beardstat.containers.documents.StatDocument;
 import com.tehbeard.beardstat.containers.documents.DocumentRegistry;
 import com.tehbeard.beardstat.containers.documents.IStatDocument;
 import com.tehbeard.beardstat.containers.documents.docfile.DocumentFile;
-import com.tehbeard.utils.sql.SQLScript;
 
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
@@ -51,28 +50,7 @@ public class MysqlStatDataProvider extends JDBCStatDataProvider {
     public static final String SQL_DOC_STORE_POLL = "sql/doc/store/storePoll";
     public static final String SQL_DOC_STORE_DELETE = "sql/doc/store/storeDelete";
     public static final String SQL_DOC_STORE_PURGE = "sql/doc/store/storePurge";
-    //meta
-    @SQLScript(value = SQL_DOC_META_INSERT, flags = Statement.RETURN_GENERATED_KEYS)
-    private PreparedStatement stmtMetaInsert;
-    @SQLScript(SQL_DOC_META_UPDATE)
-    private PreparedStatement stmtMetaUpdate;
-    @SQLScript(SQL_DOC_META_DELETE)
-    private PreparedStatement stmtMetaDelete;
-    @SQLScript(SQL_DOC_META_SELECT)
-    private PreparedStatement stmtMetaSelect;
-    @SQLScript(SQL_DOC_META_POLL)
-    private PreparedStatement stmtMetaPoll;
-    //docs
-    @SQLScript(value = SQL_DOC_STORE_INSERT, flags = Statement.RETURN_GENERATED_KEYS)
-    private PreparedStatement stmtDocInsert;
-    @SQLScript(SQL_DOC_STORE_SELECT)
-    private PreparedStatement stmtDocSelect;
-    @SQLScript(SQL_DOC_STORE_POLL)
-    private PreparedStatement stmtDocPoll;
-    @SQLScript(SQL_DOC_STORE_DELETE)
-    private PreparedStatement stmtDocDelete;
-    @SQLScript(SQL_DOC_STORE_PURGE)
-    private PreparedStatement stmtDocPurge;
+    //Document statements come from the connection pool, so document work runs on its own connection
 
     public MysqlStatDataProvider(DbPlatform platform, DatabaseConfiguration config) throws SQLException, ClassNotFoundException {
 
@@ -85,6 +63,8 @@ public class MysqlStatDataProvider extends JDBCStatDataProvider {
         this.connectionProperties.put("user", config.username);
         this.connectionProperties.put("password", config.password);
         this.connectionProperties.put("autoReconnect", "true");
+        //Send batched stat saves as multi-row inserts
+        this.connectionProperties.put("rewriteBatchedStatements", "true");
         initialise();
     }
 
@@ -187,11 +167,15 @@ public class MysqlStatDataProvider extends JDBCStatDataProvider {
     @Override
     public DocumentFile pullDocument(int entityId, String domain, String key) {
         DocumentFile file = null;
+        ConnectionPool.Handle h = null;
 
         try {
+            h = pool.acquire();
+            Connection connection = h.getConnection();
+            PreparedStatement stmtDocSelect = h.prepare(SQL_DOC_STORE_SELECT);
             boolean acStatus = connection.getAutoCommit();
             //Look for existing document
-            ResultSet rs = getDocumentResultSet(entityId, domain, key);
+            ResultSet rs = getDocumentResultSet(h, entityId, domain, key);
 
             //if existing document is found, load it.
             if (rs.next()) {
@@ -227,6 +211,8 @@ public class MysqlStatDataProvider extends JDBCStatDataProvider {
 
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            endDocumentWork(h);
         }
 
         return file;
@@ -238,12 +224,19 @@ public class MysqlStatDataProvider extends JDBCStatDataProvider {
     public DocumentFile pushDocument(int entityId, DocumentFile document) throws RevisionMismatchException, DocumentTooLargeException {
 
         DocumentFile returnDoc = null;
+        ConnectionPool.Handle h = null;
+        Connection connection = null;
 
         try {
+            h = pool.acquire();
+            connection = h.getConnection();
+            PreparedStatement stmtMetaUpdate = h.prepare(SQL_DOC_META_UPDATE);
+            PreparedStatement stmtMetaInsert = h.prepare(SQL_DOC_META_INSERT, Statement.RETURN_GENERATED_KEYS);
+            PreparedStatement stmtDocInsert = h.prepare(SQL_DOC_STORE_INSERT, Statement.RETURN_GENERATED_KEYS);
             boolean isSingleton = document.getDocument().getClass().getAnnotation(StatDocument.class).singleInstance();
 
             //1) lock meta document record, get headrev revision tag
-            ResultSet rs = getDocumentResultSet(entityId, document.getDomain(), document.getKey());
+            ResultSet rs = getDocumentResultSet(h, entityId, document.getDomain(), document.getKey());
 
             //If we found the document
             if (rs.next()) {
@@ -338,18 +331,23 @@ public class MysqlStatDataProvider extends JDBCStatDataProvider {
         } catch (SQLException e) {
             try {
                 platform.mysqlError(e, "push doc");
-                connection.rollback();
+                if (connection != null) {
+                    connection.rollback();
+                }
             } catch (SQLException ex) {
                 Logger.getLogger(MysqlStatDataProvider.class.getName()).log(Level.SEVERE, null, ex);
             }
         } catch (NoSuchAlgorithmException ex) {
             Logger.getLogger(MysqlStatDataProvider.class.getName()).log(Level.SEVERE, null, ex);
         } finally {
-            try {
+            if (h != null) {
+                try {
 
-                connection.setAutoCommit(true);
-            } catch (SQLException ex) {
-                Logger.getLogger(MysqlStatDataProvider.class.getName()).log(Level.SEVERE, null, ex);
+                    connection.setAutoCommit(true);
+                } catch (SQLException ex) {
+                    Logger.getLogger(MysqlStatDataProvider.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                pool.release(h);
             }
         }
 
@@ -359,7 +357,10 @@ public class MysqlStatDataProvider extends JDBCStatDataProvider {
 
     @Override
     public String[] getDocumentKeysInDomain(int entityId, String domain) {
+        ConnectionPool.Handle h = null;
         try {
+            h = pool.acquire();
+            PreparedStatement stmtMetaPoll = h.prepare(SQL_DOC_META_POLL);
             stmtMetaPoll.setInt(1, entityId);
             stmtMetaPoll.setInt(2, getDomain(domain, true).getDbId());
             ResultSet rs = stmtMetaPoll.executeQuery();
@@ -372,6 +373,8 @@ public class MysqlStatDataProvider extends JDBCStatDataProvider {
             return keys.toArray(new String[0]);
         } catch (SQLException ex) {
             Logger.getLogger(MysqlStatDataProvider.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            endDocumentWork(h);
         }
 
         return null;
@@ -380,13 +383,16 @@ public class MysqlStatDataProvider extends JDBCStatDataProvider {
     @Override
     public DocumentHistory getDocumentHistory(int entityId, String domain, String key) {
         ResultSet rs;
+        ConnectionPool.Handle h = null;
         try {
-            rs = getDocumentResultSet(entityId, domain, key);
+            h = pool.acquire();
+            rs = getDocumentResultSet(h, entityId, domain, key);
 
             if (rs.next()) {
                 int docId = getDocumentId(rs);
                 String headRev = getCurrentRev(rs);
                 rs.close();
+                PreparedStatement stmtDocPoll = h.prepare(SQL_DOC_STORE_POLL);
                 stmtDocPoll.setInt(1, docId);
                 rs = stmtDocPoll.executeQuery();
                 DocumentHistory history = new DocumentHistory(domain, key, headRev);
@@ -403,6 +409,8 @@ public class MysqlStatDataProvider extends JDBCStatDataProvider {
             }
         } catch (SQLException e) {
             platform.mysqlError(e, SQL_DOC_STORE_POLL);
+        } finally {
+            endDocumentWork(h);
         }
         return null;
 
@@ -413,8 +421,13 @@ public class MysqlStatDataProvider extends JDBCStatDataProvider {
         if (revision == null) {
             throw new IllegalArgumentException("Cannot have null revision");
         }
+        ConnectionPool.Handle h = null;
         try {
-            ResultSet rs = getDocumentResultSet(entityId, domain, key);
+            h = pool.acquire();
+            PreparedStatement stmtDocDelete = h.prepare(SQL_DOC_STORE_DELETE);
+            PreparedStatement stmtMetaUpdate = h.prepare(SQL_DOC_META_UPDATE);
+            PreparedStatement stmtMetaDelete = h.prepare(SQL_DOC_META_DELETE);
+            ResultSet rs = getDocumentResultSet(h, entityId, domain, key);
             int docId = -1;
             if (rs.next()) {
                 docId = getDocumentId(rs);
@@ -447,22 +460,27 @@ public class MysqlStatDataProvider extends JDBCStatDataProvider {
             }
         } catch (SQLException e) {
             platform.mysqlError(e, "Delete document");
+        } finally {
+            endDocumentWork(h);
         }
     }
 
     /**
      * Get the ResultSet for document, or null on not found
      *
+     * @param h connection to use, left with a transaction open
      * @param entityId
      * @param domain
      * @param key
      * @return
      * @throws SQLException
      */
-    private ResultSet getDocumentResultSet(int entityId, String domain, String key) throws SQLException {
+    private ResultSet getDocumentResultSet(ConnectionPool.Handle h, int entityId, String domain, String key) throws SQLException {
+        int domainId = getDomain(domain, true).getDbId();//Get domain int it, before the transaction so a rollback cannot undo it
+        Connection connection = h.getConnection();
         connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
         connection.setAutoCommit(false);
-        int domainId = getDomain(domain, true).getDbId();//Get domain int it
+        PreparedStatement stmtMetaSelect = h.prepare(SQL_DOC_META_SELECT);
         stmtMetaSelect.setInt(1, entityId);
         stmtMetaSelect.setInt(2, domainId);
         stmtMetaSelect.setString(3, key);
@@ -481,23 +499,52 @@ public class MysqlStatDataProvider extends JDBCStatDataProvider {
 
     @Override
     public void deleteDocument(int entityId, String domain, String key) {
+        ConnectionPool.Handle h = null;
         try {
-            ResultSet rs = getDocumentResultSet(entityId, domain, key);
+            h = pool.acquire();
+            ResultSet rs = getDocumentResultSet(h, entityId, domain, key);
 
             if (rs.next()) {
                 int docId = getDocumentId(rs);
                 rs.close();
                 //use purge, delete all previous revisions
+                PreparedStatement stmtDocPurge = h.prepare(SQL_DOC_STORE_PURGE);
                 stmtDocPurge.setInt(1, docId);
                 stmtDocPurge.execute();
                 //If we have zero entries, delete the meta
                 if (getDocumentHistory(entityId, domain, key).getEntries().size() == 0) {
+                    PreparedStatement stmtMetaDelete = h.prepare(SQL_DOC_META_DELETE);
                     stmtMetaDelete.setInt(1, docId);
                     stmtMetaDelete.execute();
                 }
             }
         } catch (SQLException e) {
             platform.mysqlError(e, "deleteDocument");
+        } finally {
+            endDocumentWork(h);
+        }
+    }
+
+    /**
+     * Release a connection used for document work.
+     * The outermost call commits the transaction getDocumentResultSet opened, and restores autocommit
+     * so the connection goes back to the pool in a clean state.
+     *
+     * @param h may be null
+     */
+    private void endDocumentWork(ConnectionPool.Handle h) {
+        if (h == null) {
+            return;
+        }
+        try {
+            if (!h.isNested() && !h.getConnection().getAutoCommit()) {
+                h.getConnection().commit();
+                h.getConnection().setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            platform.mysqlError(e, "end document transaction");
+        } finally {
+            pool.release(h);
         }
     }
 
@@ -0,0 +1,111 @@
+package com.tehbeard.beardstat.dataproviders;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers for a short time which entities the database does not have, so repeated lookups of them skip the query.
+ * Only exact lookups by UUID are remembered. Entries must be invalidated when the entity is created.
+ *
+ * @author James
+ */
+public class NegativeCache {
+
+    private final ConcurrentMap<String, Long> misses = new ConcurrentHashMap<String, Long>();
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     *
+     * @param ttlMillis how long a miss is remembered, 0 disables the cache
+     * @param maxEntries most misses remembered, the cache is emptied when it fills with misses that have not expired
+     */
+    public NegativeCache(long ttlMillis, int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    private static String key(ProviderQuery query) {
+        if (query.likeName || query.type == null || query.getUUIDString() == null) {
+            return null;
+        }
+        return query.type + "/" + query.getUUIDString();
+    }
+
+    /**
+     * @param query
+     * @return true if the entity was recently found not to exist
+     */
+    public boolean isMissing(ProviderQuery query) {
+        String key = key(query);
+        if (key == null) {
+            return false;
+        }
+        Long expires = this.misses.get(key);
+        if (expires == null) {
+            return false;
+        }
+        if (expires <= System.currentTimeMillis()) {
+            this.misses.remove(key, expires);
+            return false;
+        }
+        this.hits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Remember that the database has no entity for a query.
+     *
+     * @param query
+     */
+    public void addMissing(ProviderQuery query) {
+        String key = key(query);
+        if (key == null || this.ttlMillis <= 0) {
+            return;
+        }
+        if (this.misses.size() >= this.maxEntries) {
+            purge();
+        }
+        this.misses.put(key, System.currentTimeMillis() + this.ttlMillis);
+    }
+
+    /**
+     * Forget a miss, call when the entity is created.
+     *
+     * @param query
+     */
+    public void invalidate(ProviderQuery query) {
+        String key = key(query);
+        if (key != null) {
+            this.misses.remove(key);
+        }
+    }
+
+    private void purge() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Long>> it = this.misses.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue() <= now) {
+                it.remove();
+            }
+        }
+        if (this.misses.size() >= this.maxEntries) {
+            this.misses.clear();
+        }
+    }
+
+    public int size() {
+        return this.misses.size();
+    }
+
+    /**
+     * @return number of lookups answered without a query
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+}
@@ -9,6 +9,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Map.Entry;
 import java.util.logging.Level;
@@ -58,6 +59,20 @@ public class SQLiteStatDataProvider extends JDBCStatDataProvider {
 
     }
 
+    /**
+     * SQLite allows one writer, and an in memory database exists only on its own connection,
+     * so the pool holds just the main connection.
+     */
+    @Override
+    protected ConnectionPool createPool() {
+        return new ConnectionPool(1, new ConnectionPool.ConnectionFactory() {
+            @Override
+            public Connection open() {
+                return getConnection();
+            }
+        }, false, scriptSource(), POOL_TIMEOUT);
+    }
+
     @Override
     public boolean generateBackup(String file) {
         if(filename.equals(":memory:")){return true;}
@@ -150,15 +165,27 @@ public class SQLiteStatDataProvider extends JDBCStatDataProvider {
         return docDB.getStore(entityId).getDocsUnderDomain(domain);
     }
 
+    /**
+     * Rewrites the documents file, runs on the flush thread after the stats are written.
+     */
     @Override
-    public void flush() {
-        super.flush();
+    protected void onFlushed() {
+        JsonWriter writer = null;
         try {
-            DocumentRegistry.instance().toJson(docDB, DocumentDatabase.class, new JsonWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(docDbFile)))));
+            writer = new JsonWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(docDbFile))));
+            DocumentRegistry.instance().toJson(docDB, DocumentDatabase.class, writer);
         } catch (FileNotFoundException ex) {
             Logger.getLogger(SQLiteStatDataProvider.class.getName()).log(Level.SEVERE, null, ex);
         } catch (IOException ex) {
             Logger.getLogger(SQLiteStatDataProvider.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ex) {
+                    Logger.getLogger(SQLiteStatDataProvider.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
         }
     }
 
@@ -0,0 +1,385 @@
+package com.tehbeard.beardstat.dataproviders;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.tehbeard.beardstat.containers.IStat;
+import com.tehbeard.beardstat.containers.StatBlobRecord;
+import com.tehbeard.beardstat.containers.StatKey;
+import com.tehbeard.beardstat.containers.StatKeyResolver;
+import com.tehbeard.beardstat.containers.StaticStat;
+
+/**
+ * Append only journal of stat changes waiting to be written to the database, kept in a memory mapped file.
+ * Every record pushed for saving is appended before it is queued. Records are committed to the database in the order
+ * they were appended, so after each commit the end of the committed records is stored in the header,
+ * and the journal is reset once the database has committed everything queued.
+ * Records past the committed offset, left over from a crash, are replayed on startup.
+ *
+ * Layout: a 4 byte magic, the 4 byte committed offset and the 4 byte epoch, then one entry per changed stat, terminated by a zero byte.
+ * An entry is a type byte, the epoch, the entity (its id, or the query of {@link EntityChanges}),
+ * the stat key (packed ids, or the four names if not all have ids yet) and the delta or value.
+ * The type byte is written last, so an entry torn by a crash is never read.
+ * A reset only bumps the epoch, entries left over from an older epoch end the journal, so nothing is zeroed while appends wait.
+ *
+ * Appends may run on the main thread, so the mapping is grown ahead of time by {@link #reserve()} and written to disk by {@link #force()},
+ * both meant to be called from the thread that flushes.
+ *
+ * @author James
+ */
+public class StatJournal {
+
+    private static final int MAGIC = 0x42534A33;//BSJ3
+    private static final int COMMITTED = 4;
+    private static final int EPOCH = 8;
+    private static final int HEADER = 12;
+    private static final byte END = 0;
+    private static final byte PACKED = 1;
+    private static final byte NAMED = 2;
+    private static final byte ABSOLUTE = 4;
+    private static final byte QUERY = 8;
+    private static final byte CREATE = 1;
+    private static final byte LIKE_NAME = 2;
+    private static final byte NO_NAME_CHK = 4;
+    private static final byte HAS_UUID = 8;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    /**
+     * Open the journal, creating it if needed. Existing entries are kept for {@link #replay(StatKeyResolver)}.
+     *
+     * @param journalFile
+     * @param initialSize bytes to map up front, the mapping doubles whenever it fills
+     * @throws IOException
+     */
+    public StatJournal(File journalFile, int initialSize) throws IOException {
+        this.file = new RandomAccessFile(journalFile, "rw");
+        this.channel = this.file.getChannel();
+        map(Math.max(HEADER + 1, Math.max(initialSize, (int) this.file.length())));
+        if (this.buffer.getInt(0) != MAGIC) {
+            this.buffer.putInt(0, MAGIC);
+            this.buffer.putInt(COMMITTED, HEADER);
+            this.buffer.putInt(EPOCH, 0);
+            this.buffer.put(HEADER, END);
+        }
+        this.buffer.position(HEADER);
+        skipEntries();
+        int committed = this.buffer.getInt(COMMITTED);
+        if (committed < HEADER || committed > this.buffer.position()) {
+            //Not an entry boundary this journal reached, replay everything rather than guess
+            this.buffer.putInt(COMMITTED, HEADER);
+        }
+    }
+
+    private void map(int size) throws IOException {
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * Move the position past the valid entries.
+     */
+    private void skipEntries() {
+        while (readEntry(null, null, null) != null) {
+        }
+    }
+
+    /**
+     * Append the changes in a record.
+     *
+     * @param record
+     * @param resolver used to pack stat keys, no metadata is created
+     * @return offset of the end of the record, pass to {@link #commit(int)} once it is committed
+     * @throws IOException
+     */
+    public synchronized int append(StatBlobRecord record, StatKeyResolver resolver) throws IOException {
+        int epoch = this.buffer.getInt(EPOCH);
+        ProviderQuery query = record instanceof EntityChanges ? ((EntityChanges) record).query : null;
+        byte[][] entity = null;
+        int entitySize = 4;
+        if (query != null) {
+            entity = new byte[][]{nullableBytes(query.name), bytes(query.type)};
+            entitySize = 1 + 2 + (entity[0] != null ? entity[0].length : 0) + 2 + entity[1].length + (query.getUUID() != null ? 16 : 0);
+        }
+        for (IStat stat : record.stats) {
+            StatKey key = StatKey.of(stat);
+            boolean absolute = !(stat instanceof StaticStat) || ((StaticStat) stat).isAbsolute();
+            int value = absolute ? stat.getValue() : ((StaticStat) stat).getDelta();
+            long packed = resolver.pack(key, false);
+
+            byte[][] names = null;
+            int size = 1 + 4 + entitySize + 4 + 1;//type, epoch, entity, value, terminator
+            if (packed != StatKeyResolver.UNRESOLVED) {
+                size += 8;
+            } else {
+                names = new byte[][]{bytes(key.getDomain()), bytes(key.getWorld()), bytes(key.getCategory()), bytes(key.getStatistic())};
+                for (byte[] n : names) {
+                    size += 2 + n.length;
+                }
+            }
+            ensureCapacity(size);
+
+            int start = this.buffer.position();
+            this.buffer.position(start + 1);
+            this.buffer.putInt(epoch);
+            if (query == null) {
+                this.buffer.putInt(record.entityId);
+            } else {
+                putQuery(query, entity);
+            }
+            if (names == null) {
+                this.buffer.putLong(packed);
+            } else {
+                for (byte[] n : names) {
+                    putBytes(n);
+                }
+            }
+            this.buffer.putInt(value);
+            this.buffer.put(this.buffer.position(), END);
+            this.buffer.put(start, (byte) ((names == null ? PACKED : NAMED) | (absolute ? ABSOLUTE : 0) | (query != null ? QUERY : 0)));
+        }
+        return this.buffer.position();
+    }
+
+    private void putQuery(ProviderQuery query, byte[][] entity) {
+        UUID uuid = query.getUUID();
+        this.buffer.put((byte) ((query.create ? CREATE : 0) | (query.likeName ? LIKE_NAME : 0) | (query.noNameChk ? NO_NAME_CHK : 0) | (uuid != null ? HAS_UUID : 0)));
+        putBytes(entity[0]);
+        putBytes(entity[1]);
+        if (uuid != null) {
+            this.buffer.putLong(uuid.getMostSignificantBits());
+            this.buffer.putLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    private ProviderQuery getQuery() {
+        byte flags = this.buffer.get();
+        String name = getString();
+        String type = getString();
+        UUID uuid = (flags & HAS_UUID) != 0 ? new UUID(this.buffer.getLong(), this.buffer.getLong()) : null;
+        ProviderQuery query = new ProviderQuery(name, type, uuid, (flags & CREATE) != 0);
+        query.likeName = (flags & LIKE_NAME) != 0;
+        query.noNameChk = (flags & NO_NAME_CHK) != 0;
+        return query;
+    }
+
+    /**
+     * Write a length prefixed string, a length of -1 for null.
+     */
+    private void putBytes(byte[] b) {
+        if (b == null) {
+            this.buffer.putShort((short) -1);
+            return;
+        }
+        this.buffer.putShort((short) b.length);
+        this.buffer.put(b);
+    }
+
+    private String getString() {
+        short length = this.buffer.getShort();
+        if (length == -1) {
+            return null;
+        }
+        byte[] b = new byte[length];
+        this.buffer.get(b);
+        return new String(b, UTF8);
+    }
+
+    private static byte[] nullableBytes(String s) {
+        return s == null ? null : bytes(s);
+    }
+
+    private static byte[] bytes(String s) {
+        byte[] b = s.getBytes(UTF8);
+        if (b.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Stat name too long to journal");
+        }
+        return b;
+    }
+
+    /**
+     * Grow the mapping if an entry does not fit. {@link #reserve()} normally keeps enough room that this never maps on an append.
+     * Both mappings share the same pages, so nothing needs to be forced first.
+     */
+    private void ensureCapacity(int size) throws IOException {
+        if (this.buffer.remaining() >= size) {
+            return;
+        }
+        int position = this.buffer.position();
+        map(Math.max(this.buffer.capacity() * 2, position + size));
+        this.buffer.position(position);
+    }
+
+    /**
+     * Double the mapping once more than half of it is used, so appends find room without mapping.
+     * The new mapping is made without holding the lock appends take, only the swap is done under it.
+     *
+     * @throws IOException
+     */
+    public void reserve() throws IOException {
+        int capacity;
+        synchronized (this) {
+            capacity = this.buffer.capacity();
+            if (this.buffer.position() <= capacity / 2) {
+                return;
+            }
+        }
+        MappedByteBuffer grown = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity * 2);
+        synchronized (this) {
+            if (grown.capacity() > this.buffer.capacity()) {
+                grown.position(this.buffer.position());
+                this.buffer = grown;
+            }
+        }
+    }
+
+    /**
+     * Read back every entry past the committed offset, consecutive entries for the same entity are grouped into one record.
+     *
+     * @param resolver used to unpack stat keys
+     * @return the changes, in the order they were appended, each with its {@link StatBlobRecord#journalEnd} set.
+     * Changes journaled for an entity without an id come back as {@link EntityChanges}.
+     */
+    public synchronized List<StatBlobRecord> replay(StatKeyResolver resolver) {
+        List<StatBlobRecord> records = new ArrayList<StatBlobRecord>();
+        this.buffer.position(this.buffer.getInt(COMMITTED));
+        int[] entityId = new int[1];
+        ProviderQuery[] query = new ProviderQuery[1];
+        IStat stat;
+        while ((stat = readEntry(resolver, entityId, query)) != null) {
+            if (stat == SKIPPED) {
+                continue;
+            }
+            StatBlobRecord last = records.isEmpty() ? null : records.get(records.size() - 1);
+            if (query[0] != null) {
+                if (!(last instanceof EntityChanges) || !((EntityChanges) last).query.equals(query[0])) {
+                    last = new EntityChanges(query[0]);
+                    records.add(last);
+                }
+            } else if (last == null || last instanceof EntityChanges || last.entityId != entityId[0]) {
+                last = new StatBlobRecord(entityId[0]);
+                records.add(last);
+            }
+            last.stats.add(stat);
+            last.journalEnd = this.buffer.position();
+        }
+        return records;
+    }
+
+    private static final IStat SKIPPED = new StaticStat("", "", "", "", 0);
+
+    /**
+     * Read the entry at the current position.
+     *
+     * @param resolver null to only advance the position
+     * @param entityId receives the entity id of the entry
+     * @param query receives the query of the entry, null if it has an entity id
+     * @return the change, {@link #SKIPPED} if it was not decoded, null at the end of the journal
+     */
+    private IStat readEntry(StatKeyResolver resolver, int[] entityId, ProviderQuery[] query) {
+        int start = this.buffer.position();
+        try {
+            byte type = this.buffer.get();
+            if ((type & (PACKED | NAMED)) == 0 || this.buffer.getInt() != this.buffer.getInt(EPOCH)) {
+                //Nothing written here yet, or an entry from before the last reset
+                this.buffer.position(start);
+                return null;
+            }
+            int id = -1;
+            ProviderQuery entity = null;
+            if ((type & QUERY) != 0) {
+                entity = getQuery();
+            } else {
+                id = this.buffer.getInt();
+            }
+            StatKey key = null;
+            if ((type & PACKED) != 0) {
+                long packed = this.buffer.getLong();
+                key = resolver != null ? resolver.unpack(packed) : null;
+            } else {
+                key = new StatKey(getString(), getString(), getString(), getString());
+            }
+            int value = this.buffer.getInt();
+            if (resolver == null || key == null) {
+                return SKIPPED;
+            }
+            if (entityId != null) {
+                entityId[0] = id;
+            }
+            if (query != null) {
+                query[0] = entity;
+            }
+            return StaticStat.forChange(key.getDomain(), key.getWorld(), key.getCategory(), key.getStatistic(), value, (type & ABSOLUTE) != 0);
+        } catch (BufferUnderflowException e) {
+            //Torn entry at the end of the mapping
+            this.buffer.position(start);
+            this.buffer.put(start, END);
+            return null;
+        } catch (NegativeArraySizeException e) {
+            this.buffer.position(start);
+            this.buffer.put(start, END);
+            return null;
+        } catch (IllegalArgumentException e) {
+            //Garbled query
+            this.buffer.position(start);
+            this.buffer.put(start, END);
+            return null;
+        }
+    }
+
+    /**
+     * @return true if there are no entries
+     */
+    public synchronized boolean isEmpty() {
+        return this.buffer.position() == HEADER;
+    }
+
+    /**
+     * Mark the entries up to an offset as committed, they are no longer replayed.
+     *
+     * @param end offset returned by {@link #append(StatBlobRecord, StatKeyResolver)}, ignored if not past the current mark
+     */
+    public synchronized void commit(int end) {
+        if (end > this.buffer.getInt(COMMITTED) && end <= this.buffer.position()) {
+            this.buffer.putInt(COMMITTED, end);
+        }
+    }
+
+    /**
+     * Drop every entry, call only once the database has committed them.
+     * The epoch is bumped, so the old entries are never read back even where new ones do not overwrite them.
+     */
+    public synchronized void reset() {
+        this.buffer.putInt(EPOCH, this.buffer.getInt(EPOCH) + 1);
+        this.buffer.put(HEADER, END);
+        this.buffer.putInt(COMMITTED, HEADER);
+        this.buffer.position(HEADER);
+    }
+
+    /**
+     * Write changes to the mapped file out to disk. Appends are not held up while the disk is written.
+     */
+    public void force() {
+        MappedByteBuffer current;
+        synchronized (this) {
+            current = this.buffer;
+        }
+        current.force();
+    }
+
+    public synchronized void close() throws IOException {
+        this.buffer.force();
+        this.channel.close();
+        this.file.close();
+    }
+}
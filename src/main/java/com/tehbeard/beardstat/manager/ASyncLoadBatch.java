@@ -0,0 +1,106 @@
+package com.tehbeard.beardstat.manager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.tehbeard.beardstat.containers.EntityStatBlob;
+import com.tehbeard.beardstat.dataproviders.IStatDataProvider;
+import com.tehbeard.beardstat.dataproviders.ProviderQuery;
+
+/**
+ * Loads that arrive close together, pulled from the provider in one call.
+ * The batch is queued as soon as it is opened and takes loads until it starts running,
+ * which is no sooner than its window after opening.
+ * Batches are ordered for the loader queue: priority batches before the rest, then in the order they were opened.
+ *
+ * @author James
+ */
+class ASyncLoadBatch implements Runnable, Comparable<ASyncLoadBatch> {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final IStatDataProvider provider;
+    private final boolean priority;
+    private final long sequence = SEQUENCE.getAndIncrement();
+    private final long openedAt = System.nanoTime();
+    private final long windowNanos;
+    private final int maxSize;
+    private List<ASyncLoadBlob> loads = new ArrayList<ASyncLoadBlob>();
+
+    /**
+     *
+     * @param provider
+     * @param priority
+     * @param windowMillis how long the batch waits for more loads after opening
+     * @param maxSize most loads the batch takes
+     */
+    ASyncLoadBatch(IStatDataProvider provider, boolean priority, long windowMillis, int maxSize) {
+        this.provider = provider;
+        this.priority = priority;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Add a load to the batch.
+     * @param load
+     * @return false if the batch is full or has started running, the load must go in a new batch
+     */
+    synchronized boolean add(ASyncLoadBlob load) {
+        if (loads == null || loads.size() >= maxSize) {
+            return false;
+        }
+        loads.add(load);
+        return true;
+    }
+
+    @Override
+    public void run() {
+        long wait = windowNanos - (System.nanoTime() - openedAt);
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<ASyncLoadBlob> taken;
+        synchronized (this) {
+            taken = loads;
+            loads = null;
+        }
+        if (taken.size() == 1) {
+            taken.get(0).run();
+            return;
+        }
+        List<ProviderQuery> queries = new ArrayList<ProviderQuery>(taken.size());
+        for (ASyncLoadBlob load : taken) {
+            queries.add(load.getQuery());
+        }
+        Map<ProviderQuery, EntityStatBlob> blobs;
+        try {
+            blobs = provider.pullEntityBlobs(queries);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            //Fall back to loading one at a time so no promise is left waiting
+            for (ASyncLoadBlob load : taken) {
+                load.run();
+            }
+            return;
+        }
+        for (ASyncLoadBlob load : taken) {
+            load.settle(blobs.get(load.getQuery()));
+        }
+    }
+
+    @Override
+    public int compareTo(ASyncLoadBatch o) {
+        if (priority != o.priority) {
+            return priority ? -1 : 1;
+        }
+        return sequence < o.sequence ? -1 : sequence > o.sequence ? 1 : 0;
+    }
+}
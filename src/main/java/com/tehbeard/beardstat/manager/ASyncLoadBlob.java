@@ -8,11 +8,13 @@ import com.tehbeard.beardstat.NoRecordFoundException;
 import com.tehbeard.beardstat.containers.EntityStatBlob;
 import com.tehbeard.beardstat.dataproviders.IStatDataProvider;
 import com.tehbeard.beardstat.dataproviders.ProviderQuery;
+import com.tehbeard.beardstat.utils.LatencyRecorder;
 import net.dragonzone.promise.Deferred;
 import net.dragonzone.promise.Delegate;
 import net.dragonzone.promise.Promise;
 
 /**
+ * Loads a blob and settles its promise, on its own or as part of an {@link ASyncLoadBatch}.
  *
  * @author James
  */
@@ -20,26 +22,64 @@ public class ASyncLoadBlob implements Runnable{
     private final ProviderQuery query;
     private final IStatDataProvider provider;
     private final Deferred<EntityStatBlob> promise;
+    private final boolean priority;
+    private final long queuedAt = System.nanoTime();
+    private final LatencyRecorder latency;
 
     public ASyncLoadBlob(ProviderQuery query, IStatDataProvider provider, Deferred<EntityStatBlob> promise){
+        this(query, provider, promise, true, null);
+    }
+
+    /**
+     *
+     * @param query
+     * @param provider
+     * @param promise
+     * @param priority true to load ahead of non priority loads (players in game before lookups)
+     * @param latency receives the time from queueing to the promise settling, may be null
+     */
+    public ASyncLoadBlob(ProviderQuery query, IStatDataProvider provider, Deferred<EntityStatBlob> promise, boolean priority, LatencyRecorder latency){
         this.query = query;
         this.provider = provider;
         this.promise = promise;
+        this.priority = priority;
+        this.latency = latency;
         promise.onReject(new Delegate<Void, Promise<EntityStatBlob>>() {
             
             @Override
             public <P extends Promise<EntityStatBlob>> Void invoke(P params) {
-                params.getError().printStackTrace();
+                //A missing entity is an expected answer, not an error
+                if(!(params.getError() instanceof NoRecordFoundException)){
+                    params.getError().printStackTrace();
+                }
                 return null;
             }
         });
 
         
     }
+
+    public boolean isPriority() {
+        return priority;
+    }
+
+    public ProviderQuery getQuery() {
+        return query;
+    }
     
     @Override
     public void run() {
-        EntityStatBlob blob = provider.pullEntityBlob(query);
+        settle(provider.pullEntityBlob(query));
+    }
+
+    /**
+     * Resolve the promise with a loaded blob, or reject it if there is none.
+     * @param blob
+     */
+    public void settle(EntityStatBlob blob) {
+        if(latency != null){
+            latency.record(System.nanoTime() - queuedAt);
+        }
         if(blob == null){
             promise.reject(new NoRecordFoundException(query.name,query.type,query.getUUIDString()));
         }
@@ -1,24 +1,38 @@
 package com.tehbeard.beardstat.manager;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import net.dragonzone.promise.Deferred;
+import net.dragonzone.promise.Delegate;
 import net.dragonzone.promise.Promise;
 
 import com.tehbeard.beardstat.Refs;
 import com.tehbeard.beardstat.BeardStatRuntimeException;
 import com.tehbeard.beardstat.DbPlatform;
+import com.tehbeard.beardstat.containers.CompactStatBlob;
 import com.tehbeard.beardstat.containers.EntityStatBlob;
+import com.tehbeard.beardstat.containers.IStat;
+import com.tehbeard.beardstat.containers.StatKey;
+import com.tehbeard.beardstat.containers.StatKeyResolver;
 import com.tehbeard.beardstat.dataproviders.IStatDataProvider;
 import com.tehbeard.beardstat.dataproviders.ProviderQuery;
 import com.tehbeard.beardstat.dataproviders.ProviderQueryResult;
 import com.tehbeard.beardstat.dataproviders.metadata.StatisticMeta;
+import com.tehbeard.beardstat.listeners.defer.DelegateIncrement;
+import com.tehbeard.beardstat.listeners.defer.DelegateSet;
 import com.tehbeard.beardstat.manager.OnlineTimeManager.ManagerRecord;
+import com.tehbeard.beardstat.utils.LatencyRecorder;
 import java.util.Iterator;
 
 
@@ -30,16 +44,117 @@ import java.util.Iterator;
  */
 public class EntityStatManager {
 
-    private final Map<UUID,Promise<EntityStatBlob>> uuidCache = new HashMap<UUID, Promise<EntityStatBlob>>();
+    /**
+     * Blobs of online entities, loaded or loading. Used from async events (chat, pre-login) as well as the main thread,
+     * an entry is only added through putIfAbsent so each entity is loaded once.
+     */
+    private final ConcurrentMap<UUID,Promise<EntityStatBlob>> uuidCache = new ConcurrentHashMap<UUID, Promise<EntityStatBlob>>();
+    /**
+     * Blobs that have finished loading, keyed by UUID. Read from any thread by the stat recording fast path.
+     */
+    private final Map<UUID,EntityStatBlob> loadedBlobs = new ConcurrentHashMap<UUID, EntityStatBlob>();
+    /**
+     * Maximum number of distinct stats buffered for a loading entity, changes to further stats are queued as delegates.
+     */
+    public static final int MAX_PENDING_STATS = 256;
+    /**
+     * Changes made to entities whose blob is still loading.
+     */
+    private final ConcurrentMap<UUID,PendingStats> pendingStats = new ConcurrentHashMap<UUID, PendingStats>();
+    private final AtomicLong coalescedChanges = new AtomicLong();
+    private final AtomicLong overflowedChanges = new AtomicLong();
     private final DbPlatform platform;
     private final IStatDataProvider backendDatabase;
-    private ExecutorService loadQueue = Executors.newSingleThreadExecutor();
+    /**
+     * Number of recent loads kept for the latency percentiles.
+     */
+    public static final int LATENCY_SAMPLES = 1024;
+    /**
+     * Loads blobs, priority loads (players in game) are taken ahead of lookups, each lane in order of arrival.
+     */
+    private final ThreadPoolExecutor loadQueue;
+    private final LatencyRecorder loadLatency = new LatencyRecorder(LATENCY_SAMPLES);
+    /**
+     * How long a batch of loads waits for more loads to join it, in milliseconds.
+     */
+    public static final long LOAD_BATCH_WINDOW = 5L;
+    /**
+     * Most loads pulled from the provider in one batch.
+     */
+    public static final int MAX_LOAD_BATCH = 50;
+    /**
+     * Batch still taking loads for each lane, priority first.
+     */
+    private final ASyncLoadBatch[] openBatches = new ASyncLoadBatch[2];
+    /**
+     * Lookups of entities not in the cache that are still loading, so concurrent lookups of one entity share a load.
+     */
+    private final ConcurrentMap<UUID,Promise<EntityStatBlob>> lookups = new ConcurrentHashMap<UUID, Promise<EntityStatBlob>>();
+    private final AtomicLong sharedLookups = new AtomicLong();
+    /**
+     * Defaults for the offline cache when none is given.
+     */
+    public static final int  OFFLINE_CACHE_SIZE   = 500;
+    public static final long OFFLINE_CACHE_MEMORY = 16L << 20;
+    public static final long OFFLINE_CACHE_TTL    = 10 * 60 * 1000L;
+    /**
+     * Compact blobs of entities that went offline or were looked up, serves {@link #lookup(UUID)} without the database.
+     */
+    private final OfflineBlobCache offlineCache;
+    /**
+     * How long a prefetched blob is kept for a player who has not joined yet, in milliseconds.
+     */
+    public static final long PREFETCH_TIMEOUT = 60000L;
+    /**
+     * Players whose blob was prefetched at login and who have not joined yet, with the time they must join by.
+     */
+    private final Map<UUID,Long> prefetched = new ConcurrentHashMap<UUID, Long>();
+    /**
+     * Players who joined while their prefetch was still loading. Should it find nothing,
+     * the join creates them, so the changes they made meanwhile may create them too.
+     */
+    private final Map<UUID,Boolean> joinedWhileLoading = new ConcurrentHashMap<UUID, Boolean>();
 
     public EntityStatManager(DbPlatform platform, IStatDataProvider backendDatabase) {
+        this(platform, backendDatabase, 1);
+    }
+
+    /**
+     *
+     * @param platform
+     * @param backendDatabase
+     * @param loaderThreads number of blobs loaded in parallel, loads beyond the provider's connections wait for one to be free
+     */
+    public EntityStatManager(DbPlatform platform, IStatDataProvider backendDatabase, int loaderThreads) {
+        this(platform, backendDatabase, loaderThreads, new OfflineBlobCache(OFFLINE_CACHE_SIZE, OFFLINE_CACHE_MEMORY, OFFLINE_CACHE_TTL));
+    }
+
+    /**
+     *
+     * @param platform
+     * @param backendDatabase
+     * @param loaderThreads number of blobs loaded in parallel, loads beyond the provider's connections wait for one to be free
+     * @param offlineCache cache for blobs of entities that are not online
+     */
+    public EntityStatManager(DbPlatform platform, IStatDataProvider backendDatabase, int loaderThreads, OfflineBlobCache offlineCache) {
         this.platform = platform;
 
         this.backendDatabase = backendDatabase;
+        this.offlineCache = offlineCache;
+
+        loaderThreads = Math.max(1, loaderThreads);
+        //Only ASyncLoadBatch is queued, through execute() so it is not wrapped and stays comparable
+        this.loadQueue = new ThreadPoolExecutor(loaderThreads, loaderThreads, 60L, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
 
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, "BeardStat-loader-" + count.incrementAndGet());
+                    }
+                });
+        this.loadQueue.allowCoreThreadTimeOut(true);
     }
 
 
@@ -67,16 +182,374 @@ public class EntityStatManager {
         }
     }
     
+    /**
+     * Get a blob, loading it if not cached.
+     * Queries that may create the entity come from players in game and are loaded ahead of lookups.
+     * @param query
+     * @return
+     */
     public Promise<EntityStatBlob> get(ProviderQuery query){
-        if(!uuidCache.containsKey(query.getUUID())){
+        return get(query, query.create);
+    }
+
+    /**
+     * Get a blob, loading it if not cached.
+     * @param query
+     * @param priority true to load ahead of non priority loads waiting in the queue
+     * @return
+     */
+    public Promise<EntityStatBlob> get(final ProviderQuery query, boolean priority){
+        final UUID uuid = query.getUUID();
+        Promise<EntityStatBlob> cached = uuidCache.get(uuid);
+        if(cached != null){
+            return cached;
+        }
         final Deferred<EntityStatBlob> promise = new Deferred<EntityStatBlob>();
+        //Registered before the promise is published so buffered changes land, and the blob is visible to the fast path, before queued delegates replay.
+        promise.onResolve(new Delegate<Void, Promise<EntityStatBlob>>() {
+
+            @Override
+            public <P extends Promise<EntityStatBlob>> Void invoke(P params) {
+                PendingStats pending = pendingStats.remove(uuid);
+                if (pending != null) {
+                    pending.applyTo(params.getValue());
+                }
+                loadedBlobs.put(uuid, params.getValue());
+                return null;
+            }
+        });
+        promise.onReject(new Delegate<Void, Promise<EntityStatBlob>>() {
 
-        uuidCache.put(query.getUUID(), promise);//Cache UUID
-        loadQueue.submit(new ASyncLoadBlob(query, backendDatabase, promise));
+            @Override
+            public <P extends Promise<EntityStatBlob>> Void invoke(P params) {
+                //Do not keep failed loads, the next request tries again (the provider remembers missing entities for a while).
+                //The buffer is taken first, a newer load for this UUID cannot start until the promise is removed.
+                PendingStats pending = pendingStats.remove(uuid);
+                uuidCache.remove(uuid, promise);
+                boolean joined = joinedWhileLoading.remove(uuid) != null;
+                if (pending != null) {
+                    settlePending(joined && !query.create && query.name != null ? new ProviderQuery(query.name, query.type, uuid, true) : query, pending, params);
+                }
+                return null;
+            }
+        });
+        //The buffer goes in before the promise is visible, so no change to the new load falls back to a delegate
+        //that would replay after newer buffered changes. A buffer already there is taken over by whichever load wins.
+        PendingStats pending = new PendingStats(MAX_PENDING_STATS);
+        boolean installed = pendingStats.putIfAbsent(uuid, pending) == null;
+        Promise<EntityStatBlob> raced = uuidCache.putIfAbsent(uuid, promise);
+        if(raced != null){
+            //Another thread started the load first, this promise is dropped unresolved.
+            //A load still running takes our buffer over, a finished one no longer reads it.
+            if(installed && raced.isDone() && pendingStats.remove(uuid, pending)){
+                settlePending(query, pending, raced);
+            }
+            return raced;
         }
+        offlineCache.invalidate(uuid);//The online blob takes over from here
+        queueLoad(new ASyncLoadBlob(query, backendDatabase, promise, priority, loadLatency));
+        return promise;
+    }
 
-        
-        return uuidCache.get(query.getUUID());
+    /**
+     * Write out a buffer no load will take: applied to the blob if it loaded, otherwise pushed to the provider without it.
+     */
+    private void settlePending(ProviderQuery query, PendingStats pending, Promise<EntityStatBlob> load){
+        if(load.isResolved()){
+            pending.applyTo(load.getValue());
+            return;
+        }
+        //Changes do not need the stored value, the provider writes them once it has found or created the entity
+        List<IStat> changes = pending.drain();
+        if (!changes.isEmpty()) {
+            platform.getLogger().log(Level.FINE, "Queued changes to {0} stats for {1}, their blob failed to load", new Object[]{changes.size(), query.getUUID()});
+            backendDatabase.pushEntityChanges(query, changes);
+        }
+    }
+
+    /**
+     * Look up a player's blob for display, without creating them.
+     * Cached entities are returned from the cache, then the offline cache is tried,
+     * others are loaded in the lookup lane and put in the offline cache only, so the blob is a read only snapshot.
+     * Concurrent lookups of the same player share one load.
+     * @param uuid
+     * @return the blob, rejected if the player has no stats
+     */
+    public Promise<EntityStatBlob> lookup(UUID uuid){
+        Promise<EntityStatBlob> cached = uuidCache.get(uuid);
+        if(cached != null){
+            return cached;
+        }
+        final UUID key = uuid;
+        final Deferred<EntityStatBlob> promise = new Deferred<EntityStatBlob>();
+        CompactStatBlob offline = offlineCache.get(key);
+        if(offline != null){
+            promise.resolve(offline.inflate(backendDatabase));
+            return promise;
+        }
+        Promise<EntityStatBlob> inFlight = lookups.putIfAbsent(key, promise);
+        if(inFlight != null){
+            sharedLookups.incrementAndGet();
+            return inFlight;
+        }
+        Delegate<Void, Promise<EntityStatBlob>> done = new Delegate<Void, Promise<EntityStatBlob>>() {
+
+            @Override
+            public <P extends Promise<EntityStatBlob>> Void invoke(P params) {
+                lookups.remove(key, promise);
+                return null;
+            }
+        };
+        //Cached before the lookup is removed, so a lookup in between finds one or the other
+        promise.onResolve(new Delegate<Void, Promise<EntityStatBlob>>() {
+
+            @Override
+            public <P extends Promise<EntityStatBlob>> Void invoke(P params) {
+                cacheOffline(key, params.getValue());
+                return null;
+            }
+        });
+        promise.onResolve(done);
+        promise.onReject(done);
+        queueLoad(new ASyncLoadBlob(new ProviderQuery(null, uuid, false).noNameChk(), backendDatabase, promise, false, loadLatency));
+        return promise;
+    }
+
+    /**
+     * Put the compact form of a blob in the offline cache, if every stat it has can be packed.
+     */
+    private void cacheOffline(UUID uuid, EntityStatBlob blob){
+        if(!(backendDatabase instanceof StatKeyResolver)){
+            return;
+        }
+        CompactStatBlob compact = CompactStatBlob.compact(blob, (StatKeyResolver) backendDatabase);
+        if(compact != null){
+            offlineCache.put(uuid, compact);
+        }
+    }
+
+    /**
+     * @return cache of blobs for entities that are not online.
+     */
+    public OfflineBlobCache getOfflineCache(){
+        return offlineCache;
+    }
+
+    /**
+     * @return number of lookups that joined a lookup of the same entity already loading.
+     */
+    public long getSharedLookups(){
+        return sharedLookups.get();
+    }
+
+    /**
+     * Add a load to the open batch of its lane, opening and queueing a new batch if there is none or it is closed.
+     * @param load
+     */
+    private void queueLoad(ASyncLoadBlob load){
+        int lane = load.isPriority() ? 0 : 1;
+        synchronized(openBatches){
+            ASyncLoadBatch batch = openBatches[lane];
+            if(batch == null || !batch.add(load)){
+                batch = new ASyncLoadBatch(backendDatabase, load.isPriority(), LOAD_BATCH_WINDOW, MAX_LOAD_BATCH);
+                batch.add(load);
+                openBatches[lane] = batch;
+                loadQueue.execute(batch);
+            }
+        }
+    }
+
+    /**
+     * Start loading a player's blob while they log in, so it is ready by the time they join.
+     * The player is not created until {@link #prefetchJoined(String, UUID)}.
+     * The blob is kept for {@link #PREFETCH_TIMEOUT} even though the player is not online yet,
+     * if they have not joined by then it is evicted like any other offline player's blob.
+     * @param name
+     * @param uuid
+     */
+    public void prefetch(String name, UUID uuid){
+        prefetched.put(uuid, System.currentTimeMillis() + PREFETCH_TIMEOUT);
+        //Not created nor loaded ahead of lookups until they join, so a refused login never adds an entity
+        get(new ProviderQuery(name, uuid, false).noNameChk(), false);
+    }
+
+    /**
+     * Mark a prefetched player as joined, their blob is then kept for as long as they are online.
+     * A new player is created here, if the prefetch found no stats for them.
+     * @param name
+     * @param uuid
+     * @return the player's blob
+     */
+    public Promise<EntityStatBlob> prefetchJoined(final String name, final UUID uuid){
+        prefetched.remove(uuid);
+        Promise<EntityStatBlob> blob = getPlayer(name, uuid);
+        if(blob.isResolved()){
+            return blob;
+        }
+        joinedWhileLoading.put(uuid, Boolean.TRUE);
+        final Deferred<EntityStatBlob> joined = new Deferred<EntityStatBlob>();
+        final Delegate<Void, Promise<EntityStatBlob>> resolve = new Delegate<Void, Promise<EntityStatBlob>>() {
+
+            @Override
+            public <P extends Promise<EntityStatBlob>> Void invoke(P params) {
+                joinedWhileLoading.remove(uuid);
+                joined.resolve(params.getValue());
+                return null;
+            }
+        };
+        blob.onResolve(resolve);
+        blob.onReject(new Delegate<Void, Promise<EntityStatBlob>>() {
+
+            @Override
+            public <P extends Promise<EntityStatBlob>> Void invoke(P params) {
+                //The prefetch was still loading without create, it has been dropped from the cache so this load creates them
+                joinedWhileLoading.remove(uuid);
+                Promise<EntityStatBlob> created = getPlayer(name, uuid);
+                created.onResolve(resolve);
+                created.onReject(new Delegate<Void, Promise<EntityStatBlob>>() {
+
+                    @Override
+                    public <P extends Promise<EntityStatBlob>> Void invoke(P failed) {
+                        joined.reject(failed.getError());
+                        return null;
+                    }
+                });
+                return null;
+            }
+        });
+        return joined;
+    }
+
+    /**
+     * Give up on a prefetch whose login was refused, the blob is evicted on the next save.
+     * @param uuid
+     */
+    public void cancelPrefetch(UUID uuid){
+        if(prefetched.containsKey(uuid)){
+            prefetched.put(uuid, 0L);
+        }
+    }
+
+    /**
+     * @return number of prefetched blobs waiting for their player to join.
+     */
+    public int getPrefetchCount(){
+        return prefetched.size();
+    }
+
+    /**
+     * Returns the blob for this UUID if it has already finished loading, does not trigger a load.
+     * Used by the stat recording fast path, this method does not allocate.
+     * @param uuid
+     * @return the loaded blob, or null if it is not cached or still loading.
+     */
+    public EntityStatBlob getLoadedBlob(UUID uuid){
+        return loadedBlobs.get(uuid);
+    }
+
+    /**
+     * Increment a stat for a player, loading their blob if needed.
+     * While the blob loads the change is merged into a per player buffer instead of queueing a delegate.
+     * @param name
+     * @param uuid
+     * @param key
+     * @param amount amount to add, negative to decrement
+     */
+    public void incrementStat(String name, UUID uuid, StatKey key, int amount){
+        EntityStatBlob loaded = loadedBlobs.get(uuid);
+        if(loaded == null){
+            Promise<EntityStatBlob> promise = getPlayer(name, uuid);
+            if(buffered(uuid, key, amount, false, promise)){
+                return;
+            }
+            loaded = loadedBlobs.get(uuid);
+            if(loaded == null){
+                promise.onResolve(new DelegateIncrement(key.getDomain(), key.getWorld(), key.getCategory(), key.getStatistic(), amount));
+                return;
+            }
+        }
+        loaded.getStat(key).incrementStat(amount);
+    }
+
+    /**
+     * Set a stat for a player, loading their blob if needed. See {@link #incrementStat(String, UUID, StatKey, int)}
+     * @param name
+     * @param uuid
+     * @param key
+     * @param value
+     */
+    public void setStat(String name, UUID uuid, StatKey key, int value){
+        EntityStatBlob loaded = loadedBlobs.get(uuid);
+        if(loaded == null){
+            Promise<EntityStatBlob> promise = getPlayer(name, uuid);
+            if(buffered(uuid, key, value, true, promise)){
+                return;
+            }
+            loaded = loadedBlobs.get(uuid);
+            if(loaded == null){
+                promise.onResolve(new DelegateSet(key.getDomain(), key.getWorld(), key.getCategory(), key.getStatistic(), value));
+                return;
+            }
+        }
+        loaded.getStat(key).setValue(value);
+    }
+
+    /**
+     * Try to record a change in the pending buffer
+     * @return true if the change was taken care of
+     */
+    private boolean buffered(UUID uuid, StatKey key, int value, boolean absolute, Promise<EntityStatBlob> promise){
+        PendingStats pending = pendingStats.get(uuid);
+        if(pending == null){
+            return false;
+        }
+        switch(absolute ? pending.set(key, value) : pending.increment(key, value)){
+            case MERGED:
+                coalescedChanges.incrementAndGet();
+                return true;
+            case ADDED:
+                return true;
+            case FULL:
+                overflowedChanges.incrementAndGet();
+                if(absolute){
+                    promise.onResolve(new DelegateSet(key.getDomain(), key.getWorld(), key.getCategory(), key.getStatistic(), value));
+                }else{
+                    promise.onResolve(new DelegateIncrement(key.getDomain(), key.getWorld(), key.getCategory(), key.getStatistic(), value));
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return number of changes merged into a change already buffered for a loading blob.
+     */
+    public long getCoalescedChanges(){
+        return coalescedChanges.get();
+    }
+
+    /**
+     * @return number of changes queued as delegates because the loading blob's buffer was full.
+     */
+    public long getOverflowedChanges(){
+        return overflowedChanges.get();
+    }
+
+    /**
+     * @return number of load batches waiting for a loader thread.
+     */
+    public int getLoadQueueDepth(){
+        return loadQueue.getQueue().size();
+    }
+
+    /**
+     * Time from a load being queued to its blob being ready, over the last {@link #LATENCY_SAMPLES} loads.
+     * @param percentile between 0 and 100, e.g. 50 or 99
+     * @return the latency in milliseconds
+     */
+    public long getLoadLatency(double percentile){
+        return loadLatency.getPercentileMillis(percentile);
     }
     
     /**
@@ -90,9 +563,22 @@ public class EntityStatManager {
     }
 
     public void saveCache() {
-        Iterator<Promise<EntityStatBlob>> cacheIterator = uuidCache.values().iterator();
+        long now = System.currentTimeMillis();
+        //Expired even if their load was rejected and never cached, their blobs are then evicted like any offline player's
+        Iterator<Map.Entry<UUID, Long>> prefetchIterator = prefetched.entrySet().iterator();
+        while(prefetchIterator.hasNext()){
+            if(prefetchIterator.next().getValue() <= now){
+                prefetchIterator.remove();
+            }
+        }
+        Iterator<Map.Entry<UUID, Promise<EntityStatBlob>>> cacheIterator = uuidCache.entrySet().iterator();
         while(cacheIterator.hasNext()){
-            Promise<EntityStatBlob> blobP = cacheIterator.next();
+            Map.Entry<UUID, Promise<EntityStatBlob>> entry = cacheIterator.next();
+            Promise<EntityStatBlob> blobP = entry.getValue();
+            if(prefetched.containsKey(entry.getKey())){
+                //Still logging in, keep it even though they are not online
+                continue;
+            }
             if(blobP.isResolved()){
                 EntityStatBlob blob = blobP.getValue();
                 if (blob.getType().equals(IStatDataProvider.PLAYER_TYPE)) {
@@ -109,7 +595,9 @@ public class EntityStatManager {
                         OnlineTimeManager.setRecord(entityName, platform.getWorldForPlayer(entityName));
                     } else {
                         OnlineTimeManager.wipeRecord(entityName);
-                        cacheIterator.remove();
+                        uuidCache.remove(entry.getKey(), blobP);
+                        loadedBlobs.remove(entry.getKey());
+                        cacheOffline(entry.getKey(), blob);
                     }
                 }
                 backendDatabase.pushEntityBlob(blob);
@@ -117,6 +605,16 @@ public class EntityStatManager {
         }
     }
 
+    /**
+     * Hand the changes of every loaded blob to the provider without the bookkeeping done by {@link #saveCache()},
+     * so they reach the provider's journal between flushes.
+     */
+    public void journalCache() {
+        for (EntityStatBlob blob : loadedBlobs.values()) {
+            backendDatabase.pushEntityBlob(blob);
+        }
+    }
+
     private boolean isPlayerOnline(String player) {
         return platform.isPlayerOnline(player);
     }
@@ -141,4 +639,12 @@ public class EntityStatManager {
         this.backendDatabase.flush();
     }
 
+    /**
+     * Stop the loader threads, wait for pending flushes and stop the provider's flush threads.
+     */
+    public void shutdown() {
+        this.loadQueue.shutdown();
+        this.backendDatabase.shutdown();
+    }
+
 }
@@ -0,0 +1,144 @@
+package com.tehbeard.beardstat.manager;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.tehbeard.beardstat.containers.CompactStatBlob;
+
+/**
+ * Least recently used cache of blobs for entities that are not online, kept in their compact form.
+ * Bounded by entry count, by total {@link CompactStatBlob#memoryFootprint()} and by age,
+ * the least recently used entries are evicted first when over a limit.
+ *
+ * @author James
+ */
+public class OfflineBlobCache {
+
+    private static class Entry {
+        final CompactStatBlob blob;
+        final long            weight;
+        final long            expires;
+
+        Entry(CompactStatBlob blob, long expires) {
+            this.blob = blob;
+            this.weight = blob.memoryFootprint();
+            this.expires = expires;
+        }
+    }
+
+    private final LinkedHashMap<UUID, Entry> entries = new LinkedHashMap<UUID, Entry>(16, 0.75f, true);
+    private final int                        maxEntries;
+    private final long                       maxWeight;
+    private final long                       ttlMillis;
+    private long                             weight      = 0;
+    private long                             hits        = 0;
+    private long                             misses      = 0;
+    private long                             evictions   = 0;
+    private long                             expirations = 0;
+
+    /**
+     *
+     * @param maxEntries most blobs kept, 0 disables the cache
+     * @param maxWeight most bytes kept, by {@link CompactStatBlob#memoryFootprint()}
+     * @param ttlMillis how long a blob is served after it was cached
+     */
+    public OfflineBlobCache(int maxEntries, long maxWeight, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @param uuid
+     * @return the cached blob, or null if it is not cached or has expired
+     */
+    public synchronized CompactStatBlob get(UUID uuid) {
+        Entry e = this.entries.get(uuid);
+        if (e != null && e.expires <= System.currentTimeMillis()) {
+            remove(uuid);
+            this.expirations++;
+            e = null;
+        }
+        if (e == null) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        return e.blob;
+    }
+
+    /**
+     * Cache a blob, replacing any older one for the same entity.
+     *
+     * @param uuid
+     * @param blob
+     */
+    public synchronized void put(UUID uuid, CompactStatBlob blob) {
+        if (this.maxEntries <= 0) {
+            return;
+        }
+        remove(uuid);
+        Entry e = new Entry(blob, System.currentTimeMillis() + this.ttlMillis);
+        this.entries.put(uuid, e);
+        this.weight += e.weight;
+
+        Iterator<Map.Entry<UUID, Entry>> it = this.entries.entrySet().iterator();
+        while ((this.entries.size() > this.maxEntries || this.weight > this.maxWeight) && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            this.weight -= eldest.weight;
+            this.evictions++;
+        }
+    }
+
+    /**
+     * Drop a blob, used when the entity comes online and its cached copy goes stale.
+     *
+     * @param uuid
+     */
+    public synchronized void invalidate(UUID uuid) {
+        remove(uuid);
+    }
+
+    private void remove(UUID uuid) {
+        Entry e = this.entries.remove(uuid);
+        if (e != null) {
+            this.weight -= e.weight;
+        }
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return approximate bytes held
+     */
+    public synchronized long getWeight() {
+        return this.weight;
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * @return number of blobs evicted to stay within the size and memory limits
+     */
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * @return number of blobs dropped because they were too old when asked for
+     */
+    public synchronized long getExpirations() {
+        return this.expirations;
+    }
+}
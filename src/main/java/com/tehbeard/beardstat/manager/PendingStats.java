@@ -0,0 +1,132 @@
+package com.tehbeard.beardstat.manager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.tehbeard.beardstat.containers.EntityStatBlob;
+import com.tehbeard.beardstat.containers.IStat;
+import com.tehbeard.beardstat.containers.StatKey;
+import com.tehbeard.beardstat.containers.StaticStat;
+
+/**
+ * Changes recorded for an entity while its blob is still loading, merged by stat.
+ * Increments to the same stat are summed, a set replaces anything recorded before it.
+ * Applied to the blob in one pass once it loads, after which it accepts no more changes.
+ *
+ * @author James
+ */
+class PendingStats {
+
+    private static class Change {
+        boolean absolute = false;
+        int     value    = 0;
+    }
+
+    private final Map<StatKey, Change> changes = new HashMap<StatKey, Change>();
+    private final int                  maxStats;
+    private boolean                    closed  = false;
+
+    PendingStats(int maxStats) {
+        this.maxStats = maxStats;
+    }
+
+    /**
+     * Merge an increment, negative amounts decrement.
+     *
+     * @param key
+     * @param amount
+     * @return {@link Result#MERGED} or {@link Result#ADDED} if recorded,
+     *         {@link Result#FULL} if the stat is new and the buffer is full, {@link Result#CLOSED} once applied.
+     */
+    synchronized Result increment(StatKey key, int amount) {
+        Change change = this.changes.get(key);
+        if (change != null && !this.closed) {
+            change.value += amount;
+            return Result.MERGED;
+        }
+        Result result = add(key);
+        if (result == Result.ADDED) {
+            this.changes.get(key).value = amount;
+        }
+        return result;
+    }
+
+    /**
+     * Record an absolute value, discarding changes recorded before it.
+     *
+     * @param key
+     * @param value
+     * @return see {@link #increment(StatKey, int)}
+     */
+    synchronized Result set(StatKey key, int value) {
+        Change change = this.changes.get(key);
+        if (change != null && !this.closed) {
+            change.absolute = true;
+            change.value = value;
+            return Result.MERGED;
+        }
+        Result result = add(key);
+        if (result == Result.ADDED) {
+            change = this.changes.get(key);
+            change.absolute = true;
+            change.value = value;
+        }
+        return result;
+    }
+
+    private Result add(StatKey key) {
+        if (this.closed) {
+            return Result.CLOSED;
+        }
+        if (this.changes.size() >= this.maxStats) {
+            return Result.FULL;
+        }
+        this.changes.put(key, new Change());
+        return Result.ADDED;
+    }
+
+    /**
+     * Apply every recorded change to the blob and close the buffer.
+     *
+     * @param blob
+     */
+    synchronized void applyTo(EntityStatBlob blob) {
+        this.closed = true;
+        for (Map.Entry<StatKey, Change> e : this.changes.entrySet()) {
+            IStat stat = blob.getStat(e.getKey());
+            Change change = e.getValue();
+            if (change.absolute) {
+                stat.setValue(change.value);
+            } else if (change.value != 0) {
+                stat.incrementStat(change.value);
+            }
+        }
+        this.changes.clear();
+    }
+
+    /**
+     * Close the buffer and take what it holds as detached changes, used when the load fails
+     * so the changes can still be written without the blob.
+     *
+     * @return one change per stat, see {@link StaticStat#forChange}
+     */
+    synchronized List<IStat> drain() {
+        this.closed = true;
+        List<IStat> drained = new ArrayList<IStat>(this.changes.size());
+        for (Map.Entry<StatKey, Change> e : this.changes.entrySet()) {
+            StatKey key = e.getKey();
+            Change change = e.getValue();
+            if (change.absolute || change.value != 0) {
+                drained.add(StaticStat.forChange(key.getDomain(), key.getWorld(), key.getCategory(), key.getStatistic(), change.value, change.absolute));
+            }
+        }
+        this.changes.clear();
+        return drained;
+    }
+
+    enum Result {
+        ADDED, MERGED, FULL, CLOSED
+    }
+}
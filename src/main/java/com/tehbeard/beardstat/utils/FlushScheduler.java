@@ -0,0 +1,122 @@
+package com.tehbeard.beardstat.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs flush tasks on a fixed set of threads.
+ * Tasks are submitted under a key, a task submitted while another with the same key is still waiting to start is merged into it,
+ * so a slow flush never piles up a backlog of identical flushes behind it.
+ * Tasks with different keys may run in parallel, up to the configured number of threads.
+ *
+ * @author James
+ */
+public class FlushScheduler {
+
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<String, Boolean> pending = new ConcurrentHashMap<String, Boolean>();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     *
+     * @param name prefix for thread names
+     * @param threads number of flush threads
+     * @param maxQueued number of tasks that may wait for a thread, further tasks are rejected
+     */
+    public FlushScheduler(final String name, int threads, int maxQueued) {
+        threads = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, maxQueued)),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, name + "-" + this.count.incrementAndGet());
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queue a task, unless a task with the same key is already waiting.
+     *
+     * @param key
+     * @param task
+     * @return true if the task was queued, false if it was merged into a waiting one or the queue is full
+     */
+    public boolean submit(final String key, final Runnable task) {
+        if (this.pending.putIfAbsent(key, Boolean.TRUE) != null) {
+            this.coalesced.incrementAndGet();
+            return false;
+        }
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    //Requests made from here on need another run to be seen
+                    FlushScheduler.this.pending.remove(key);
+                    task.run();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            this.pending.remove(key);
+            this.rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * @return number of tasks waiting for a thread
+     */
+    public int getQueueDepth() {
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * @return number of tasks currently running
+     */
+    public int getActiveCount() {
+        return this.executor.getActiveCount();
+    }
+
+    /**
+     * @return number of submissions merged into a waiting task
+     */
+    public long getCoalesced() {
+        return this.coalesced.get();
+    }
+
+    /**
+     * @return number of submissions dropped because the queue was full or the scheduler shut down
+     */
+    public long getRejected() {
+        return this.rejected.get();
+    }
+
+    /**
+     * Stop accepting tasks and wait for queued ones to finish.
+     *
+     * @param timeout
+     * @param unit
+     * @return true if every task finished in time
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        this.executor.shutdown();
+        try {
+            return this.executor.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
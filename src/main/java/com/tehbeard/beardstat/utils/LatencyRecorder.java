@@ -0,0 +1,64 @@
+package com.tehbeard.beardstat.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the most recent durations in a ring buffer and reports percentiles over them.
+ * Recording is cheap, the samples are only copied and sorted when a percentile is asked for.
+ *
+ * @author James
+ */
+public class LatencyRecorder {
+
+    private final long[] samples;
+    private int next = 0;
+    private long count = 0;
+
+    /**
+     *
+     * @param size number of recent samples to keep
+     */
+    public LatencyRecorder(int size) {
+        this.samples = new long[Math.max(1, size)];
+    }
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos
+     */
+    public synchronized void record(long nanos) {
+        this.samples[this.next] = nanos;
+        this.next = (this.next + 1) % this.samples.length;
+        this.count++;
+    }
+
+    /**
+     * @return number of durations recorded since creation
+     */
+    public synchronized long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Get a percentile of the kept samples.
+     *
+     * @param percentile between 0 and 100
+     * @return the duration in milliseconds, 0 if nothing was recorded
+     */
+    public long getPercentileMillis(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            int n = (int) Math.min(this.count, this.samples.length);
+            if (n == 0) {
+                return 0;
+            }
+            sorted = Arrays.copyOf(this.samples, n);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        index = Math.max(0, Math.min(sorted.length - 1, index));
+        return TimeUnit.NANOSECONDS.toMillis(sorted[index]);
+    }
+}
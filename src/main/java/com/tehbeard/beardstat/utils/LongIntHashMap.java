@@ -0,0 +1,232 @@
+package com.tehbeard.beardstat.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing long to int hash map with linear probing.
+ * Keys and values are held in primitive arrays, no entry objects are allocated.
+ * Not thread safe.
+ *
+ * @author James
+ *
+ */
+public class LongIntHashMap {
+
+    private static final long  FREE_KEY    = 0L;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[]  keys;
+    private int[]   values;
+    private int     size      = 0;
+    private int     threshold;
+    private int     mask;
+
+    private boolean hasFreeKey = false;
+    private int     freeValue  = 0;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = 4;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Copy another map.
+     *
+     * @param other
+     */
+    public LongIntHashMap(LongIntHashMap other) {
+        this.keys = other.keys.clone();
+        this.values = other.values.clone();
+        this.size = other.size;
+        this.threshold = other.threshold;
+        this.mask = other.mask;
+        this.hasFreeKey = other.hasFreeKey;
+        this.freeValue = other.freeValue;
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        this.threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Returns the value mapped to key, or missing if no mapping exists.
+     *
+     * @param key
+     * @param missing
+     * @return
+     */
+    public int get(long key, int missing) {
+        if (key == FREE_KEY) {
+            return this.hasFreeKey ? this.freeValue : missing;
+        }
+        int i = slot(key, this.mask);
+        long k;
+        while ((k = this.keys[i]) != FREE_KEY) {
+            if (k == key) {
+                return this.values[i];
+            }
+            i = (i + 1) & this.mask;
+        }
+        return missing;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == FREE_KEY) {
+            return this.hasFreeKey;
+        }
+        int i = slot(key, this.mask);
+        long k;
+        while ((k = this.keys[i]) != FREE_KEY) {
+            if (k == key) {
+                return true;
+            }
+            i = (i + 1) & this.mask;
+        }
+        return false;
+    }
+
+    public void put(long key, int value) {
+        if (key == FREE_KEY) {
+            if (!this.hasFreeKey) {
+                this.size++;
+            }
+            this.hasFreeKey = true;
+            this.freeValue = value;
+            return;
+        }
+        int i = slot(key, this.mask);
+        long k;
+        while ((k = this.keys[i]) != FREE_KEY) {
+            if (k == key) {
+                this.values[i] = value;
+                return;
+            }
+            i = (i + 1) & this.mask;
+        }
+        this.keys[i] = key;
+        this.values[i] = value;
+        if (++this.size > this.threshold) {
+            rehash(this.keys.length << 1);
+        }
+    }
+
+    /**
+     * Remove the mapping for key.
+     *
+     * @param key
+     * @param missing
+     * @return the value that was mapped to key, or missing if no mapping existed
+     */
+    public int remove(long key, int missing) {
+        if (key == FREE_KEY) {
+            if (!this.hasFreeKey) {
+                return missing;
+            }
+            this.hasFreeKey = false;
+            this.size--;
+            return this.freeValue;
+        }
+        int i = slot(key, this.mask);
+        long k;
+        while ((k = this.keys[i]) != FREE_KEY) {
+            if (k == key) {
+                int value = this.values[i];
+                shiftKeys(i);
+                this.size--;
+                return value;
+            }
+            i = (i + 1) & this.mask;
+        }
+        return missing;
+    }
+
+    /**
+     * Close the gap left by a removed key, moving back later keys of the run that would no longer be found past it.
+     *
+     * @param gap
+     */
+    private void shiftKeys(int gap) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & this.mask;
+            long k = this.keys[i];
+            if (k == FREE_KEY) {
+                this.keys[gap] = FREE_KEY;
+                return;
+            }
+            int home = slot(k, this.mask);
+            //Move k unless its home slot lies cyclically in (gap, i]
+            if (gap <= i ? (home <= gap || home > i) : (home <= gap && home > i)) {
+                this.keys[gap] = k;
+                this.values[gap] = this.values[i];
+                gap = i;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            long key = oldKeys[j];
+            if (key != FREE_KEY) {
+                int i = slot(key, this.mask);
+                while (this.keys[i] != FREE_KEY) {
+                    i = (i + 1) & this.mask;
+                }
+                this.keys[i] = key;
+                this.values[i] = oldValues[j];
+            }
+        }
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return a new array containing every key in the map.
+     */
+    public long[] keys() {
+        long[] out = new long[this.size];
+        int o = 0;
+        if (this.hasFreeKey) {
+            out[o++] = FREE_KEY;
+        }
+        for (long key : this.keys) {
+            if (key != FREE_KEY) {
+                out[o++] = key;
+            }
+        }
+        return out;
+    }
+
+    public void clear() {
+        Arrays.fill(this.keys, FREE_KEY);
+        this.size = 0;
+        this.hasFreeKey = false;
+    }
+
+    /**
+     * @return approximate heap usage of the backing arrays, in bytes.
+     */
+    public long memoryFootprint() {
+        return 8L * this.keys.length + 4L * this.values.length;
+    }
+}
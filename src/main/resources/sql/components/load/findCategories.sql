@@ -0,0 +1 @@
+SELECT * FROM `${PREFIX}_category` WHERE `category` IN (?);
\ No newline at end of file
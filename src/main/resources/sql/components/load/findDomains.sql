@@ -0,0 +1 @@
+SELECT * FROM `${PREFIX}_domain` WHERE `domain` IN (?);
\ No newline at end of file
@@ -0,0 +1 @@
+SELECT * FROM `${PREFIX}_statistic` WHERE `statistic` IN (?);
\ No newline at end of file
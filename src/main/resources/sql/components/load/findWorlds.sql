@@ -0,0 +1 @@
+SELECT * FROM `${PREFIX}_world` WHERE `world` IN (?);
\ No newline at end of file
@@ -1 +1 @@
-INSERT INTO `${PREFIX}_category` (category) VALUES (?);
\ No newline at end of file
+INSERT IGNORE INTO `${PREFIX}_category` (category) VALUES (?);
\ No newline at end of file
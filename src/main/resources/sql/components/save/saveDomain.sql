@@ -1 +1 @@
-INSERT INTO `${PREFIX}_domain` (domain) VALUES (?);
\ No newline at end of file
+INSERT IGNORE INTO `${PREFIX}_domain` (domain) VALUES (?);
\ No newline at end of file
@@ -1 +1 @@
-INSERT INTO `${PREFIX}_statistic` (statistic,name,formatting) VALUES (?,?,?);
\ No newline at end of file
+INSERT IGNORE INTO `${PREFIX}_statistic` (statistic,name,formatting) VALUES (?,?,?);
\ No newline at end of file
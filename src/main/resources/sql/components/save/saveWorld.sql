@@ -1 +1 @@
-INSERT INTO `${PREFIX}_world` (world,name) VALUES (?,?);
\ No newline at end of file
+INSERT IGNORE INTO `${PREFIX}_world` (world,name) VALUES (?,?);
\ No newline at end of file
@@ -0,0 +1 @@
+INSERT INTO `${PREFIX}_value` values(?,?,?,?,?,?) ON DUPLICATE KEY UPDATE `value`= `value` + VALUES(`value`);
\ No newline at end of file
@@ -0,0 +1,9 @@
+SELECT 
+`entityId`,
+`name`,
+`type`,
+`uuid` 
+FROM 
+`${PREFIX}_entity` 
+WHERE 
+`uuid` IN (?);
\ No newline at end of file
@@ -0,0 +1,20 @@
+SELECT 
+`k`.`entityId`,
+`domain`,
+`world`,
+`category`,
+`statistic`,
+`value` 
+FROM 
+`${PREFIX}_value` as `k`,
+`${PREFIX}_domain` as `d`,
+`${PREFIX}_world` as `w`,
+`${PREFIX}_category` as `c`,
+`${PREFIX}_statistic` as `s` 
+WHERE 
+`d`.`domainId`    = `k`.`domainId`    AND 
+`w`.`worldId`     = `k`.`worldId`     AND 
+`c`.`categoryId`  = `k`.`categoryId`  AND 
+`s`.`statisticId` = `k`.`statisticId` AND 
+`k`.`entityId` IN (?) 
+ORDER BY `k`.`entityId`;
\ No newline at end of file
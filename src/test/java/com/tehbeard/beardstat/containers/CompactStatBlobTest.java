@@ -0,0 +1,176 @@
+package com.tehbeard.beardstat.containers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.tehbeard.beardstat.dataproviders.IStatDataProvider;
+
+/**
+ * Round trips between {@link EntityStatBlob} and {@link CompactStatBlob}, and blobs that create their stats from loaded values.
+ *
+ * @author James
+ */
+public class CompactStatBlobTest {
+
+    /**
+     * Gives each name seen an id on first use, the same for every component.
+     */
+    private static class Ids implements StatKeyResolver {
+
+        final Map<String, Integer> ids = new HashMap<String, Integer>();
+        final List<String> names = new ArrayList<String>();
+        /**
+         * Names that have no id, as if another server had just created them.
+         */
+        String unknown = null;
+
+        int id(String name, boolean create) {
+            Integer id = this.ids.get(name);
+            if (id == null && create && !name.equals(this.unknown)) {
+                id = this.names.size();
+                this.ids.put(name, id);
+                this.names.add(name);
+            }
+            return id == null ? -1 : id;
+        }
+
+        @Override
+        public long pack(StatKey key, boolean create) {
+            return Packing.pack(id(key.getDomain(), create), id(key.getWorld(), create), id(key.getCategory(), create), id(key.getStatistic(), create));
+        }
+
+        @Override
+        public StatKey unpack(long packed) {
+            return new StatKey(this.names.get(Packing.domainId(packed)), this.names.get(Packing.worldId(packed)),
+                    this.names.get(Packing.categoryId(packed)), this.names.get(Packing.statisticId(packed)));
+        }
+
+        /**
+         * Load a value into a blob the way a data provider does.
+         */
+        void load(EntityStatBlob blob, String world, String category, String statistic, int value) {
+            blob.putLoaded(pack(new StatKey("default", world, category, statistic), true), value, this);
+        }
+    }
+
+    private static EntityStatBlob blob() {
+        return new EntityStatBlob("Notch", 1, IStatDataProvider.PLAYER_TYPE, UUID.randomUUID(), null);
+    }
+
+    private static EntityStatBlob loaded(Ids ids) {
+        EntityStatBlob blob = blob();
+        ids.load(blob, "world", "blocks", "stone", 1);
+        ids.load(blob, "world", "blocks", "dirt", 2);
+        ids.load(blob, "nether", "blocks", "stone", 4);
+        return blob;
+    }
+
+    /**
+     * A stat asked for is created from its loaded value, the others are not created, nothing is queued for archive.
+     */
+    @Test
+    public void testCreatedOnDemand() {
+        Ids ids = new Ids();
+        EntityStatBlob blob = loaded(ids);
+        assertTrue(blob.getCreatedStats().isEmpty());
+        assertTrue(blob.hasStat(new StatKey("default", "world", "blocks", "dirt")));
+        assertFalse(blob.hasStat(new StatKey("default", "world", "blocks", "gold")));
+
+        IStat stone = blob.getStat("default", "world", "blocks", "stone");
+        assertEquals(1, stone.getValue());
+        assertFalse(stone.isArchive());
+        assertSame(blob, stone.getOwner());
+        assertSame(stone, blob.getStat("default", "world", "blocks", "stone"));
+        assertEquals(1, blob.getCreatedStats().size());
+        assertTrue(blob.cloneForArchive().stats.isEmpty());
+
+        stone.incrementStat(2);
+        StatBlobRecord record = blob.cloneForArchive();
+        assertEquals(1, record.stats.size());
+        assertEquals(2, ((StaticStat) record.stats.get(0)).getDelta());
+    }
+
+    /**
+     * Queries see every loaded stat, including one already created and changed.
+     */
+    @Test
+    public void testQueryCreatesAll() {
+        Ids ids = new Ids();
+        EntityStatBlob blob = loaded(ids);
+        blob.getStat("default", "world", "blocks", "stone").incrementStat(10);
+        assertEquals(11 + 4, blob.getStats("default", "*", "blocks", "stone").getValue());
+        assertEquals(3, blob.getStats().size());
+        assertEquals(11 + 2 + 4, blob.resolveVariable("blocks::*"));
+        assertEquals(1, blob.cloneForArchive().stats.size());
+    }
+
+    /**
+     * A stat that was never loaded starts at 0, as before.
+     */
+    @Test
+    public void testNotLoaded() {
+        Ids ids = new Ids();
+        EntityStatBlob blob = loaded(ids);
+        IStat gold = blob.getStat("default", "world", "blocks", "gold");
+        assertEquals(0, gold.getValue());
+        assertEquals(2, blob.getStat("default", "world", "blocks", "dirt").getValue());
+    }
+
+    /**
+     * Compacting copies created stats and loaded values, inflating gives back the same values without creating any stat.
+     */
+    @Test
+    public void testRoundTrip() {
+        Ids ids = new Ids();
+        EntityStatBlob blob = loaded(ids);
+        blob.getStat("default", "world", "blocks", "stone").incrementStat(10);
+        blob.getStat("default", "world", "items", "sword").setValue(7);
+        ids.pack(new StatKey("default", "world", "items", "sword"), true);
+
+        CompactStatBlob compact = CompactStatBlob.compact(blob, ids);
+        assertNotNull(compact);
+        assertEquals(4, compact.size());
+        assertEquals(blob.getEntityID(), compact.getEntityID());
+        assertEquals(blob.getUUID(), compact.getUUID());
+        assertEquals(2, compact.getValue(new StatKey("default", "world", "blocks", "dirt")));
+
+        EntityStatBlob inflated = compact.inflate(null);
+        assertTrue(inflated.getCreatedStats().isEmpty());
+        assertEquals(blob.getName(), inflated.getName());
+        assertEquals(11, inflated.getStat("default", "world", "blocks", "stone").getValue());
+        assertEquals(7, inflated.getStat("default", "world", "items", "sword").getValue());
+        assertEquals(blob.getStats().size(), inflated.getStats().size());
+        for (IStat stat : blob.getStats()) {
+            assertEquals(stat.getValue(), inflated.getStat(StatKey.of(stat)).getValue());
+        }
+        assertTrue(inflated.cloneForArchive().stats.isEmpty());
+
+        //Each inflated blob has its own values
+        inflated.getStat("default", "world", "blocks", "dirt").setValue(100);
+        assertEquals(2, compact.inflate(null).getStat("default", "world", "blocks", "dirt").getValue());
+    }
+
+    /**
+     * A blob with a stat whose metadata has no id cannot be compacted.
+     */
+    @Test
+    public void testUnpackable() {
+        Ids ids = new Ids();
+        ids.unknown = "new";
+        EntityStatBlob blob = loaded(ids);
+        blob.getStat("default", "world", "blocks", "new").setValue(1);
+        assertNull(CompactStatBlob.compact(blob, ids));
+    }
+}
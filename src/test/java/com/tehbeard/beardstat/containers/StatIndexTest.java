@@ -0,0 +1,155 @@
+package com.tehbeard.beardstat.containers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.tehbeard.beardstat.dataproviders.IStatDataProvider;
+
+/**
+ * Queries answered by the {@link StatIndex} of a {@link EntityStatBlob}.
+ *
+ * @author James
+ */
+public class StatIndexTest {
+
+    private static EntityStatBlob blob() {
+        EntityStatBlob blob = new EntityStatBlob("Notch", 1, IStatDataProvider.PLAYER_TYPE, UUID.randomUUID(), null);
+        blob.getStat("default", "world", "blocks", "stone").setValue(1);
+        blob.getStat("default", "world", "blocks", "dirt").setValue(2);
+        blob.getStat("default", "world", "items", "stone").setValue(4);
+        blob.getStat("default", "world_the-end", "blocks", "stone").setValue(8);
+        blob.getStat("default", "world2", "blocks", "stone").setValue(16);
+        blob.getStat("other", "world", "blocks", "stone").setValue(32);
+        return blob;
+    }
+
+    private static Set<String> keys(StatVector vector) {
+        Set<String> keys = new HashSet<String>();
+        for (IStat stat : vector) {
+            keys.add(StatKey.of(stat).toString());
+        }
+        return keys;
+    }
+
+    @Test
+    public void testExact() {
+        EntityStatBlob blob = blob();
+        StatVector vector = blob.getStats("default", "world", "blocks", "stone");
+        assertEquals(1, keys(vector).size());
+        assertEquals(1, vector.getValue());
+        assertEquals(0, blob.getStats("default", "world", "blocks", "gold").getValue());
+        assertEquals(0, keys(blob.getStats("default", "nether", "blocks", "stone")).size());
+    }
+
+    /**
+     * "*" matches any name, including those with characters outside [a-zA-Z0-9_].
+     */
+    @Test
+    public void testWildcard() {
+        EntityStatBlob blob = blob();
+        assertEquals(1 + 8 + 16, blob.getStats("default", "*", "blocks", "stone").getValue());
+        assertTrue(keys(blob.getStats("default", "*", "*", "*")).contains("default::world_the-end::blocks::stone"));
+        assertEquals(1 + 2 + 4 + 8 + 16 + 32, blob.getStats("*", "*", "*", "*").getValue());
+        assertEquals(1 + 8 + 16, blob.getStats("default", ".*", "blocks", "stone").getValue());
+    }
+
+    /**
+     * Any other component with regex characters is matched against the whole name at its level.
+     */
+    @Test
+    public void testRegex() {
+        EntityStatBlob blob = blob();
+        assertEquals(1 + 16, blob.getStats("default", "world\\d?", "blocks", "stone").getValue());
+        assertEquals(1 + 2, blob.getStats("default", "world", "blocks", "(stone|dirt)").getValue());
+        assertEquals(1 + 4, blob.getStats("default", "world", "[bi].*", "stone").getValue());
+        //Not a partial match
+        assertEquals(0, blob.getStats("default", "world", "block", "st.n").getValue());
+    }
+
+    /**
+     * The explicit regex form matches the whole key.
+     */
+    @Test
+    public void testKeyRegex() {
+        EntityStatBlob blob = blob();
+        StatVector vector = blob.getStats("default", "*", "*", "stone", "default::world[^:]*::blocks::stone", true);
+        assertEquals(1 + 8 + 16, vector.getValue());
+    }
+
+    /**
+     * Stats created or replaced after the index has been queried are found by the next query.
+     */
+    @Test
+    public void testAddAndReplace() {
+        EntityStatBlob blob = blob();
+        assertEquals(1 + 8 + 16, blob.getStats("default", "*", "blocks", "stone").getValue());
+
+        blob.getStat("default", "nether", "blocks", "stone").setValue(64);
+        assertEquals(1 + 8 + 16 + 64, blob.getStats("default", "*", "blocks", "stone").getValue());
+
+        IStat replacement = new StaticStat("default", "world", "blocks", "stone", 128);
+        blob.addStat(replacement);
+        StatVector vector = blob.getStats("default", "world", "blocks", "stone");
+        assertEquals(1, keys(vector).size());
+        assertSame(replacement, vector.iterator().next());
+        assertSame(replacement, blob.getStat("default", "world", "blocks", "stone"));
+        assertEquals(128 + 8 + 16 + 64, blob.getStats("default", "*", "blocks", "stone").getValue());
+    }
+
+    /**
+     * Queries racing with stats being created see every stat that existed before they started, and never fail.
+     */
+    @Test(timeout = 30000)
+    public void testAddWhileQuerying() throws InterruptedException {
+        final EntityStatBlob blob = blob();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread writer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 20000; i++) {
+                        blob.getStat("default", "world" + (i % 50), "blocks", "stat" + i).setValue(0);
+                        blob.addStat(new StaticStat("default", "world", "blocks", "dirt", 2));
+                    }
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            assertEquals(1 + 2 + 8 + 16, blob.getStats("default", "*", "blocks", "*").getValue());
+            assertEquals(2, blob.getStats("default", "world", "blocks", "dirt").getValue());
+        }
+        writer.join();
+        assertNull(error.get());
+        assertEquals(20000 + 4, keys(blob.getStats("default", "*", "blocks", "*")).size());
+    }
+
+    /**
+     * Four part variables name the domain and world, two part variables sum every world of the default domain.
+     */
+    @Test
+    public void testResolveVariable() {
+        EntityStatBlob blob = blob();
+        assertEquals(1, blob.resolveVariable("default::world::blocks::stone"));
+        assertEquals(32, blob.resolveVariable("other::world::blocks::stone"));
+        assertEquals(1 + 8 + 16, blob.resolveVariable("blocks::stone"));
+        try {
+            blob.resolveVariable("world::blocks::stone");
+            fail("three part variable was accepted");
+        } catch (IllegalStateException e) {
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.tehbeard.beardstat.containers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * @author James
+ */
+public class StaticStatTest {
+
+    private static final int MAX_DELTA = (1 << 29) - 1;
+
+    private static StaticStat stat(int value) {
+        return new StaticStat("default", "world", "test", "stat", value);
+    }
+
+    /**
+     * Increments are recorded as a delta, a snapshot carries it and clears the stat for the next save.
+     */
+    @Test
+    public void testSnapshotDelta() {
+        StaticStat stat = stat(10);
+        assertNull(stat.snapshotForArchive());
+        stat.incrementStat(5);
+        stat.decrementStat(2);
+
+        StaticStat snapshot = stat.snapshotForArchive();
+        assertFalse(snapshot.isAbsolute());
+        assertEquals(3, snapshot.getDelta());
+        assertEquals(13, snapshot.getValue());
+        assertFalse(stat.isArchive());
+        assertEquals(0, stat.getDelta());
+        assertEquals(13, stat.getValue());
+        assertNull(stat.snapshotForArchive());
+    }
+
+    /**
+     * Setting the stat saves its value as is.
+     */
+    @Test
+    public void testSetIsAbsolute() {
+        StaticStat stat = stat(10);
+        stat.incrementStat(5);
+        stat.setValue(42);
+        stat.incrementStat(1);
+
+        StaticStat snapshot = stat.snapshotForArchive();
+        assertTrue(snapshot.isAbsolute());
+        assertEquals(43, snapshot.getValue());
+    }
+
+    /**
+     * A delta pushed past the 30 bits it is packed in is saved as the absolute value.
+     */
+    @Test
+    public void testDeltaOverflow() {
+        StaticStat stat = stat(1000);
+        stat.incrementStat(MAX_DELTA);
+        assertFalse(stat.isAbsolute());
+        assertEquals(MAX_DELTA, stat.getDelta());
+        stat.incrementStat(1);
+        assertTrue(stat.isAbsolute());
+        stat.incrementStat(7);
+
+        StaticStat snapshot = stat.snapshotForArchive();
+        assertTrue(snapshot.isAbsolute());
+        assertEquals(1000 + MAX_DELTA + 8, snapshot.getValue());
+
+        //The next change is a delta again
+        stat.incrementStat(2);
+        assertFalse(stat.isAbsolute());
+        assertEquals(2, stat.getDelta());
+    }
+
+    @Test
+    public void testNegativeDeltaOverflow() {
+        StaticStat stat = stat(0);
+        stat.decrementStat(MAX_DELTA + 1);
+        assertFalse(stat.isAbsolute());
+        assertEquals(-(MAX_DELTA + 1), stat.getDelta());
+        stat.decrementStat(1);
+
+        StaticStat snapshot = stat.snapshotForArchive();
+        assertTrue(snapshot.isAbsolute());
+        assertEquals(-(MAX_DELTA + 2), snapshot.getValue());
+    }
+
+    /**
+     * Increments racing with snapshots are never lost or counted twice,
+     * the snapshots and the change left after the last one add up to every increment.
+     */
+    @Test(timeout = 30000)
+    public void testConcurrentSnapshots() throws InterruptedException {
+        final StaticStat stat = stat(0);
+        final int threads = 4;
+        final int increments = 200000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicLong expected = new AtomicLong();
+        for (int t = 0; t < threads; t++) {
+            final int step = t + 1;
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < increments; i++) {
+                            stat.incrementStat(step);
+                        }
+                        expected.addAndGet((long) step * increments);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        long saved = 0;
+        int snapshots = 0;
+        start.countDown();
+        while (done.getCount() > 0) {
+            StaticStat snapshot = stat.snapshotForArchive();
+            if (snapshot != null) {
+                assertFalse(snapshot.isAbsolute());
+                saved += snapshot.getDelta();
+                snapshots++;
+            }
+        }
+        done.await();
+
+        assertTrue(snapshots > 0);
+        assertEquals(expected.get(), saved + stat.getDelta());
+        assertEquals(expected.get(), stat.getValue());
+    }
+}
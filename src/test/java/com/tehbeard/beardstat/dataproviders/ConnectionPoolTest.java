@@ -0,0 +1,128 @@
+package com.tehbeard.beardstat.dataproviders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * @author James
+ */
+public class ConnectionPoolTest {
+
+    /**
+     * Opens connections that only answer {@link Connection#isClosed()}.
+     */
+    private static final ConnectionPool.ConnectionFactory CONNECTIONS = new ConnectionPool.ConnectionFactory() {
+
+        @Override
+        public Connection open() throws SQLException {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, new InvocationHandler() {
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("isClosed")) {
+                        return false;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+    };
+
+    private static ConnectionPool pool(int size, long timeoutMillis) {
+        return new ConnectionPool(size, CONNECTIONS, false, null, timeoutMillis);
+    }
+
+    /**
+     * A free connection is taken without counting a wait, a nested acquire gets the same connection back.
+     */
+    @Test
+    public void testAcquireFree() throws SQLException {
+        ConnectionPool pool = pool(2, 1000);
+        ConnectionPool.Handle h = pool.acquire();
+        assertSame(h, pool.acquire());
+        pool.release(h);
+        pool.release(h);
+        assertEquals(1, pool.getAcquireCount());
+        assertEquals(0, pool.getWaitCount());
+        assertEquals(0, pool.getTotalWaitMillis());
+        assertEquals(2, pool.getIdleCount());
+    }
+
+    /**
+     * A thread blocked on a busy pool is counted with how long it waited.
+     */
+    @Test(timeout = 10000)
+    public void testWaitCounted() throws Exception {
+        final ConnectionPool pool = pool(1, 10000);
+        ConnectionPool.Handle held = pool.acquire();
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread waiter = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    started.countDown();
+                    pool.release(pool.acquire());
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        waiter.start();
+        started.await();
+        Thread.sleep(100);
+        pool.release(held);
+        waiter.join();
+
+        assertNull(error.get());
+        assertEquals(2, pool.getAcquireCount());
+        assertEquals(1, pool.getWaitCount());
+        assertTrue(pool.getTotalWaitMillis() >= 50);
+        assertTrue(pool.getMaxWaitMillis() >= 50);
+        assertTrue(pool.getMaxWaitMillis() <= pool.getTotalWaitMillis());
+    }
+
+    /**
+     * A wait that times out is counted too.
+     */
+    @Test(timeout = 10000)
+    public void testTimeoutCounted() throws Exception {
+        final ConnectionPool pool = pool(1, 50);
+        ConnectionPool.Handle held = pool.acquire();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread waiter = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    pool.acquire();
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        waiter.start();
+        waiter.join();
+        pool.release(held);
+
+        if (!(error.get() instanceof SQLException)) {
+            fail("expected a timeout, got " + error.get());
+        }
+        assertEquals(1, pool.getWaitCount());
+        assertTrue(pool.getMaxWaitMillis() >= 40);
+    }
+}
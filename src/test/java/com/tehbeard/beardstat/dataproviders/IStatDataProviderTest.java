@@ -6,10 +6,21 @@ package com.tehbeard.beardstat.dataproviders;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
 
 import org.junit.Test;
 
+import com.tehbeard.beardstat.Refs;
 import com.tehbeard.beardstat.containers.EntityStatBlob;
+import com.tehbeard.beardstat.containers.IStat;
+import com.tehbeard.beardstat.containers.StaticStat;
 import com.tehbeard.beardstat.containers.documents.DocumentHistory;
 import com.tehbeard.beardstat.containers.documents.DocumentRegistry;
 import com.tehbeard.beardstat.containers.documents.docfile.DocumentFile;
@@ -43,6 +54,37 @@ public abstract class IStatDataProviderTest {
         
     }
 
+    /**
+     * Test of pullEntityBlobs method, of class IStatDataProvider.
+     */
+    @Test
+    public void testPullEntityBlobs() {
+        System.out.println("pullEntityBlobs");
+        ProviderQuery found = new ProviderQuery("Tehbeard", IStatDataProvider.PLAYER_TYPE, MojangWebAPI.expandUUID("09d770ac7bfe48a2bf6877cbd21c51a1"), false);
+        ProviderQuery missing = new ProviderQuery("MrRogers", IStatDataProvider.PLAYER_TYPE, null, false);
+        UUID uuid = UUID.randomUUID();
+        EntityStatBlob created = instance.pullEntityBlob(new ProviderQuery("Streamed", IStatDataProvider.PLAYER_TYPE, uuid, true));
+        created.getStat("world", "test", "streamed").setValue(42);
+        created.getStat("nether", "test", "streamed").setValue(-3);
+        instance.pushEntityBlob(created);
+        instance.flushSync();
+        ProviderQuery streamed = new ProviderQuery("Streamed", IStatDataProvider.PLAYER_TYPE, uuid, false);
+
+        Map<ProviderQuery, EntityStatBlob> blobs = instance.pullEntityBlobs(Arrays.asList(found, streamed, missing));
+        assertEquals(2, blobs.size());
+        assertEquals("Tehbeard", blobs.get(found).getName());
+        EntityStatBlob single = instance.pullEntityBlob(found);
+        assertEquals(single.getEntityID(), blobs.get(found).getEntityID());
+        //The stats of both entities come from one ordered result, each has to get its own
+        assertEquals(single.getStats().size(), blobs.get(found).getStats().size());
+        for (IStat stat : single.getStats()) {
+            assertEquals(stat.getValue(), blobs.get(found).getStat(stat.getDomain(), stat.getWorld(), stat.getCategory(), stat.getStatistic()).getValue());
+        }
+        assertEquals(2, blobs.get(streamed).getStats().size());
+        assertEquals(42, blobs.get(streamed).getStat("world", "test", "streamed").getValue());
+        assertEquals(-3, blobs.get(streamed).getStat("nether", "test", "streamed").getValue());
+    }
+
     /**
      * Test of pushEntityBlob method, of class IStatDataProvider.
      */
@@ -64,6 +106,79 @@ public abstract class IStatDataProviderTest {
         
     }
 
+    /**
+     * Deltas and sets of one stat pushed before a flush are written in the order they were made.
+     */
+    @Test
+    public void testPushMixedChanges() {
+        System.out.println("pushMixedChanges");
+        ProviderQuery query = new ProviderQuery("Tehbeard", IStatDataProvider.PLAYER_TYPE, MojangWebAPI.expandUUID("09d770ac7bfe48a2bf6877cbd21c51a1"), false);
+        EntityStatBlob blob = instance.pullEntityBlob(query);
+        blob.getStat("world", "test", "mixed").incrementStat(5);
+        instance.pushEntityBlob(blob);
+        blob.getStat("world", "test", "mixed").setValue(100);
+        instance.pushEntityBlob(blob);
+        blob.getStat("world", "test", "mixed").incrementStat(3);
+        instance.pushEntityBlob(blob);
+        instance.flushSync();
+
+        blob = instance.pullEntityBlob(query);
+        assertEquals(103, blob.getStat("world", "test", "mixed").getValue());
+    }
+
+    /**
+     * Changes pushed without a blob are written once the entity is created.
+     */
+    @Test
+    public void testPushEntityChanges() {
+        System.out.println("pushEntityChanges");
+        ProviderQuery query = new ProviderQuery("MrChanges", IStatDataProvider.PLAYER_TYPE, UUID.randomUUID(), true);
+        IStat change = StaticStat.forChange(Refs.DEFAULT_DOMAIN, "world", "test", "unloaded", 7, false);
+        instance.pushEntityChanges(query, Collections.singletonList(change));
+        instance.flushSync();
+
+        EntityStatBlob blob = instance.pullEntityBlob(query);
+        assertNotNull(blob);
+        assertEquals(7, blob.getStat("world", "test", "unloaded").getValue());
+    }
+
+    /**
+     * Changes for an entity that does not exist are dropped if their query may not create it.
+     */
+    @Test
+    public void testPushEntityChangesNoCreate() {
+        System.out.println("pushEntityChangesNoCreate");
+        ProviderQuery query = new ProviderQuery("MrNobody", IStatDataProvider.PLAYER_TYPE, UUID.randomUUID(), false);
+        IStat change = StaticStat.forChange(Refs.DEFAULT_DOMAIN, "world", "test", "unloaded", 7, false);
+        instance.pushEntityChanges(query, Collections.singletonList(change));
+        instance.flushSync();
+
+        assertFalse(instance.hasEntityBlob(query));
+    }
+
+    /**
+     * Metadata for many new stats is created during a flush, and the stats are written against it.
+     */
+    @Test
+    public void testPushNewMetadata() {
+        System.out.println("pushNewMetadata");
+        ProviderQuery query = new ProviderQuery("Tehbeard", IStatDataProvider.PLAYER_TYPE, MojangWebAPI.expandUUID("09d770ac7bfe48a2bf6877cbd21c51a1"), false);
+        EntityStatBlob blob = instance.pullEntityBlob(query);
+        for (int i = 0; i < 150; i++) {
+            blob.getStat("batchworld", "batchcat", "batchstat" + i).setValue(i + 1);
+        }
+        instance.pushEntityBlob(blob);
+        instance.flushSync();
+
+        assertNotNull(instance.getWorld("batchworld", false));
+        assertNotNull(instance.getCategory("batchcat", false));
+        for (int i = 0; i < 150; i++) {
+            assertNotNull(instance.getStatistic("batchstat" + i, false));
+        }
+        blob = instance.pullEntityBlob(query);
+        assertEquals(150, blob.getStat("batchworld", "batchcat", "batchstat149").getValue());
+    }
+
     /**
      * Test of hasEntityBlob method, of class IStatDataProvider.
      */
@@ -76,6 +191,22 @@ public abstract class IStatDataProviderTest {
         assertEquals(expResult, result);
     }
 
+    /**
+     * A remembered miss does not stop the entity being created, and is forgotten once it is.
+     */
+    @Test
+    public void testMissingEntityCreated() {
+        System.out.println("missingEntityCreated");
+        ProviderQuery lookup = new ProviderQuery("MrMissing", IStatDataProvider.PLAYER_TYPE, null, false);
+        assertNull(instance.pullEntityBlob(lookup));
+        assertFalse(instance.hasEntityBlob(lookup));
+
+        ProviderQuery create = new ProviderQuery("MrMissing", IStatDataProvider.PLAYER_TYPE, null, true);
+        assertNotNull(instance.pullEntityBlob(create));
+        assertTrue(instance.hasEntityBlob(lookup));
+        assertNotNull(instance.pullEntityBlob(lookup));
+    }
+
     /**
      * Test of deleteEntityBlob method, of class IStatDataProvider.
      */
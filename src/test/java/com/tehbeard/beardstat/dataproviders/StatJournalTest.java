@@ -0,0 +1,144 @@
+package com.tehbeard.beardstat.dataproviders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tehbeard.beardstat.containers.StatBlobRecord;
+import com.tehbeard.beardstat.containers.StatKey;
+import com.tehbeard.beardstat.containers.StatKeyResolver;
+import com.tehbeard.beardstat.containers.StaticStat;
+
+/**
+ * @author James
+ */
+public class StatJournalTest {
+
+    /**
+     * Never packs, so every entry is journaled by name.
+     */
+    private static final StatKeyResolver NAMES = new StatKeyResolver() {
+
+        @Override
+        public long pack(StatKey key, boolean create) {
+            return UNRESOLVED;
+        }
+
+        @Override
+        public StatKey unpack(long packed) {
+            return null;
+        }
+    };
+
+    private File file;
+    private StatJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("beardstat", ".journal");
+        journal = new StatJournal(file, 64);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        journal.close();
+        file.delete();
+    }
+
+    private static StatBlobRecord record(int entityId, String stat, int delta) {
+        StatBlobRecord record = new StatBlobRecord(entityId);
+        record.stats.add(StaticStat.forChange("default", "world", "test", stat, delta, false));
+        return record;
+    }
+
+    /**
+     * Records committed before a crash are not replayed, the rest are.
+     */
+    @Test
+    public void testReplaySkipsCommitted() throws IOException {
+        int first = journal.append(record(1, "a", 5), NAMES);
+        journal.append(record(2, "b", 7), NAMES);
+        journal.commit(first);
+        journal.close();
+
+        journal = new StatJournal(file, 64);
+        List<StatBlobRecord> replayed = journal.replay(NAMES);
+        assertEquals(1, replayed.size());
+        assertEquals(2, replayed.get(0).entityId);
+        assertEquals(7, ((StaticStat) replayed.get(0).stats.get(0)).getDelta());
+    }
+
+    /**
+     * Entries from before a reset are never read back, even past the end of shorter new entries.
+     */
+    @Test
+    public void testResetForgetsOldEntries() throws IOException {
+        journal.append(record(1, "a long statistic name", 5), NAMES);
+        journal.append(record(2, "b", 7), NAMES);
+        journal.reset();
+        assertTrue(journal.isEmpty());
+        journal.append(record(3, "c", 1), NAMES);
+        journal.close();
+
+        journal = new StatJournal(file, 64);
+        List<StatBlobRecord> replayed = journal.replay(NAMES);
+        assertEquals(1, replayed.size());
+        assertEquals(3, replayed.get(0).entityId);
+    }
+
+    /**
+     * Changes pushed for an entity without an id come back with their query, in order with the other records.
+     */
+    @Test
+    public void testReplayEntityChanges() throws IOException {
+        ProviderQuery query = new ProviderQuery("Notch", UUID.randomUUID(), true).noNameChk();
+        EntityChanges changes = new EntityChanges(query);
+        changes.stats.add(StaticStat.forChange("default", "world", "test", "a", 3, false));
+        changes.stats.add(StaticStat.forChange("default", "world", "test", "b", 9, true));
+        journal.append(record(1, "a", 5), NAMES);
+        journal.append(changes, NAMES);
+        journal.close();
+
+        journal = new StatJournal(file, 64);
+        List<StatBlobRecord> replayed = journal.replay(NAMES);
+        assertEquals(2, replayed.size());
+        assertFalse(replayed.get(0) instanceof EntityChanges);
+        EntityChanges read = (EntityChanges) replayed.get(1);
+        assertEquals(query, read.query);
+        assertTrue(read.query.noNameChk);
+        assertEquals(2, read.stats.size());
+        assertEquals(3, ((StaticStat) read.stats.get(0)).getDelta());
+        assertTrue(((StaticStat) read.stats.get(1)).isAbsolute());
+        assertEquals(9, read.stats.get(1).getValue());
+    }
+
+    /**
+     * Growing the journal ahead of appends keeps the entries already written.
+     */
+    @Test
+    public void testReserveKeepsEntries() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            journal.append(record(i, "stat" + i, i), NAMES);
+            journal.reserve();
+        }
+        journal.force();
+        journal.close();
+
+        journal = new StatJournal(file, 64);
+        List<StatBlobRecord> replayed = journal.replay(NAMES);
+        assertEquals(4, replayed.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, replayed.get(i).entityId);
+            assertEquals(i, ((StaticStat) replayed.get(i).stats.get(0)).getDelta());
+        }
+    }
+}
@@ -4,12 +4,19 @@
  */
 package com.tehbeard.beardstat.dataproviders;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.UUID;
 
 import org.junit.BeforeClass;
+import org.junit.Test;
 
 import com.tehbeard.beardstat.DatabaseConfiguration;
+import com.tehbeard.beardstat.containers.EntityStatBlob;
+import com.tehbeard.utils.uuid.MojangWebAPI;
 
 
 /**
@@ -39,4 +46,93 @@ public class TestSQLiteDataProvider extends IStatDataProviderTest  {
         ((JDBCStatDataProvider)instance).cacheComponents();
     }
 
+    /**
+     * Microbenchmark of queryDatabase, prints the average latency of each query shape.
+     */
+    @Test
+    public void testQueryDatabaseLatency() {
+        ProviderQuery[] queries = {
+            new ProviderQuery("Tehbeard", IStatDataProvider.PLAYER_TYPE, MojangWebAPI.expandUUID("09d770ac7bfe48a2bf6877cbd21c51a1"), false),
+            new ProviderQuery("MrRogers", IStatDataProvider.PLAYER_TYPE, null, false),
+            ProviderQuery.ALL_PLAYERS,
+        };
+        int runs = 2000;
+        for (ProviderQuery query : queries) {
+            int expected = instance.queryDatabase(query).length;
+            for (int i = 0; i < runs / 10; i++) {
+                instance.queryDatabase(query);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                assertEquals(expected, instance.queryDatabase(query).length);
+            }
+            long micros = (System.nanoTime() - start) / 1000 / runs;
+            System.out.println("queryDatabase " + query + ": " + micros + "us");
+        }
+    }
+
+    /**
+     * Benchmark of the flush, prints the rows written per second by the per entity mode (flushBatchSize 0)
+     * and the chunked mode.
+     */
+    @Test
+    public void testFlushThroughput() {
+        JDBCStatDataProvider provider = (JDBCStatDataProvider) instance;
+        int entities = 50;
+        int stats = 40;
+        EntityStatBlob[] blobs = new EntityStatBlob[entities];
+        for (int e = 0; e < entities; e++) {
+            blobs[e] = instance.pullEntityBlob(new ProviderQuery("Bench" + e, IStatDataProvider.PLAYER_TYPE, UUID.randomUUID(), true));
+        }
+        int oldBatchSize = provider.config.flushBatchSize;
+        try {
+            int round = 0;
+            for (int batchSize : new int[]{0, 500}) {
+                provider.config.flushBatchSize = batchSize;
+                //First round creates the metadata and warms up the statements
+                flushRound(blobs, stats, ++round);
+                int runs = 5;
+                long start = System.nanoTime();
+                for (int i = 0; i < runs; i++) {
+                    flushRound(blobs, stats, ++round);
+                }
+                long nanos = System.nanoTime() - start;
+                long rows = (long) runs * entities * stats;
+                System.out.println("flush flushBatchSize=" + batchSize + ": " + (rows * 1000000000L / Math.max(1, nanos)) + " rows/sec");
+            }
+            EntityStatBlob check = instance.pullEntityBlob(new ProviderQuery("Bench0", IStatDataProvider.PLAYER_TYPE, blobs[0].getUUID(), false));
+            assertEquals(round, check.getStat("benchworld", "bench", "stat0").getValue());
+        } finally {
+            provider.config.flushBatchSize = oldBatchSize;
+        }
+    }
+
+    private void flushRound(EntityStatBlob[] blobs, int stats, int value) {
+        for (EntityStatBlob blob : blobs) {
+            for (int i = 0; i < stats; i++) {
+                blob.getStat("benchworld", "bench", "stat" + i).setValue(value);
+            }
+            instance.pushEntityBlob(blob);
+        }
+        instance.flushSync();
+    }
+
+    /**
+     * SQLite compares tags case sensitively, so tags differing only in case get entries of their own.
+     */
+    @Test
+    public void testMetadataCase() {
+        ProviderQuery query = new ProviderQuery("Tehbeard", IStatDataProvider.PLAYER_TYPE, MojangWebAPI.expandUUID("09d770ac7bfe48a2bf6877cbd21c51a1"), false);
+        EntityStatBlob blob = instance.pullEntityBlob(query);
+        blob.getStat("world", "casecat", "CaseStat").setValue(1);
+        blob.getStat("world", "casecat", "casestat").setValue(2);
+        instance.pushEntityBlob(blob);
+        instance.flushSync();
+
+        assertFalse(instance.getStatistic("CaseStat", false).getDbId() == instance.getStatistic("casestat", false).getDbId());
+        blob = instance.pullEntityBlob(query);
+        assertEquals(1, blob.getStat("world", "casecat", "CaseStat").getValue());
+        assertEquals(2, blob.getStat("world", "casecat", "casestat").getValue());
+    }
+
 }
@@ -0,0 +1,192 @@
+package com.tehbeard.beardstat.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.PriorityBlockingQueue;
+
+import net.dragonzone.promise.Deferred;
+
+import org.junit.Test;
+
+import com.tehbeard.beardstat.containers.EntityStatBlob;
+import com.tehbeard.beardstat.dataproviders.IStatDataProvider;
+import com.tehbeard.beardstat.dataproviders.ProviderQuery;
+
+/**
+ * @author James
+ */
+public class ASyncLoadBatchTest {
+
+    /**
+     * Provider answering only blob loads, recording each call.
+     * Every query with a name other than "missing" is found.
+     */
+    private static class Loads implements InvocationHandler {
+
+        final List<Integer> batches = new ArrayList<Integer>();
+        int singles = 0;
+        boolean failBatches = false;
+        final IStatDataProvider provider = (IStatDataProvider) Proxy.newProxyInstance(
+                IStatDataProvider.class.getClassLoader(), new Class<?>[]{IStatDataProvider.class}, this);
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("pullEntityBlobs")) {
+                Collection<ProviderQuery> queries = (Collection<ProviderQuery>) args[0];
+                batches.add(queries.size());
+                if (failBatches) {
+                    throw new IllegalStateException("batch failed");
+                }
+                Map<ProviderQuery, EntityStatBlob> blobs = new HashMap<ProviderQuery, EntityStatBlob>();
+                for (ProviderQuery query : queries) {
+                    EntityStatBlob blob = blob(query);
+                    if (blob != null) {
+                        blobs.put(query, blob);
+                    }
+                }
+                return blobs;
+            }
+            if (method.getName().equals("pullEntityBlob")) {
+                singles++;
+                return blob((ProviderQuery) args[0]);
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+
+        private EntityStatBlob blob(ProviderQuery query) {
+            if ("missing".equals(query.name)) {
+                return null;
+            }
+            return new EntityStatBlob(query.name, 1, IStatDataProvider.PLAYER_TYPE, query.getUUID(), provider);
+        }
+
+        ASyncLoadBlob load(String name, Deferred<EntityStatBlob> promise) {
+            return new ASyncLoadBlob(new ProviderQuery(name, UUID.randomUUID(), false).noNameChk(), provider, promise, true, null);
+        }
+
+        /**
+         * Add a load that must be accepted.
+         * @return its promise
+         */
+        Deferred<EntityStatBlob> add(ASyncLoadBatch batch, String name) {
+            Deferred<EntityStatBlob> promise = new Deferred<EntityStatBlob>();
+            assertTrue(batch.add(load(name, promise)));
+            return promise;
+        }
+    }
+
+    /**
+     * Loads added before the batch runs are pulled in one call, each promise settles with its own blob.
+     */
+    @Test
+    public void testCoalesce() {
+        Loads loads = new Loads();
+        ASyncLoadBatch batch = new ASyncLoadBatch(loads.provider, true, 0, 10);
+        Deferred<EntityStatBlob> a = loads.add(batch, "a");
+        Deferred<EntityStatBlob> b = loads.add(batch, "b");
+        Deferred<EntityStatBlob> missing = loads.add(batch, "missing");
+        batch.run();
+
+        assertEquals(1, loads.batches.size());
+        assertEquals(3, (int) loads.batches.get(0));
+        assertEquals(0, loads.singles);
+        assertEquals("a", a.getValue().getName());
+        assertEquals("b", b.getValue().getName());
+        assertTrue(missing.isRejected());
+
+        //Closed once it has run
+        assertFalse(batch.add(loads.load("late", new Deferred<EntityStatBlob>())));
+    }
+
+    /**
+     * A lone load does not go through the batch call.
+     */
+    @Test
+    public void testSingle() {
+        Loads loads = new Loads();
+        ASyncLoadBatch batch = new ASyncLoadBatch(loads.provider, false, 0, 10);
+        Deferred<EntityStatBlob> a = loads.add(batch, "a");
+        batch.run();
+        assertEquals(0, loads.batches.size());
+        assertEquals(1, loads.singles);
+        assertEquals("a", a.getValue().getName());
+    }
+
+    @Test
+    public void testMaxSize() {
+        Loads loads = new Loads();
+        ASyncLoadBatch batch = new ASyncLoadBatch(loads.provider, true, 0, 2);
+        loads.add(batch, "a");
+        loads.add(batch, "b");
+        assertFalse(batch.add(loads.load("c", new Deferred<EntityStatBlob>())));
+        batch.run();
+        assertEquals(2, (int) loads.batches.get(0));
+    }
+
+    /**
+     * The batch does not pull before its window has passed since it was opened.
+     */
+    @Test
+    public void testWindow() {
+        Loads loads = new Loads();
+        long start = System.nanoTime();
+        ASyncLoadBatch batch = new ASyncLoadBatch(loads.provider, true, 50, 10);
+        loads.add(batch, "a");
+        loads.add(batch, "b");
+        batch.run();
+        assertTrue((System.nanoTime() - start) / 1000000L >= 50);
+        assertEquals(1, loads.batches.size());
+    }
+
+    /**
+     * Priority batches are taken first, then batches in the order they were opened.
+     */
+    @Test
+    public void testLanes() {
+        Loads loads = new Loads();
+        ASyncLoadBatch lookup1 = new ASyncLoadBatch(loads.provider, false, 0, 10);
+        ASyncLoadBatch player1 = new ASyncLoadBatch(loads.provider, true, 0, 10);
+        ASyncLoadBatch lookup2 = new ASyncLoadBatch(loads.provider, false, 0, 10);
+        ASyncLoadBatch player2 = new ASyncLoadBatch(loads.provider, true, 0, 10);
+        PriorityBlockingQueue<ASyncLoadBatch> queue = new PriorityBlockingQueue<ASyncLoadBatch>();
+        queue.add(lookup1);
+        queue.add(player1);
+        queue.add(lookup2);
+        queue.add(player2);
+        assertSame(player1, queue.poll());
+        assertSame(player2, queue.poll());
+        assertSame(lookup1, queue.poll());
+        assertSame(lookup2, queue.poll());
+    }
+
+    /**
+     * If the batch call fails every load is retried on its own, so no promise is left waiting.
+     */
+    @Test
+    public void testFallback() {
+        Loads loads = new Loads();
+        loads.failBatches = true;
+        ASyncLoadBatch batch = new ASyncLoadBatch(loads.provider, true, 0, 10);
+        Deferred<EntityStatBlob> a = loads.add(batch, "a");
+        Deferred<EntityStatBlob> missing = loads.add(batch, "missing");
+        batch.run();
+
+        assertEquals(1, loads.batches.size());
+        assertEquals(2, loads.singles);
+        assertEquals("a", a.getValue().getName());
+        assertTrue(missing.isRejected());
+    }
+}
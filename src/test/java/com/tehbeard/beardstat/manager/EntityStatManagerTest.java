@@ -6,10 +6,18 @@
 package com.tehbeard.beardstat.manager;
 
 import com.tehbeard.beardstat.DatabaseConfiguration;
+import com.tehbeard.beardstat.Refs;
+import com.tehbeard.beardstat.containers.EntityStatBlob;
+import com.tehbeard.beardstat.containers.StatKey;
+import com.tehbeard.beardstat.dataproviders.ProviderQuery;
 import com.tehbeard.beardstat.dataproviders.SQLiteStatDataProvider;
 import com.tehbeard.beardstat.dataproviders.TestPlatform;
 import com.tehbeard.utils.uuid.MojangWebAPI;
 import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import net.dragonzone.promise.Promise;
 import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
@@ -65,6 +73,155 @@ public class EntityStatManagerTest {
         assertNotNull(manager.getPlayerAsync("Tehbeard",MojangWebAPI.expandUUID("09d770ac7bfe48a2bf6877cbd21c51a1"), true).getValue());
     }
 
+    /**
+     * Changes recorded while a blob loads are buffered and applied once it loads.
+     */
+    @Test(timeout = 10000)
+    public void testIncrementStatWhileLoading() throws InterruptedException {
+        UUID uuid = MojangWebAPI.expandUUID("09d770ac7bfe48a2bf6877cbd21c51a1");
+        StatKey key = new StatKey(Refs.DEFAULT_DOMAIN, "world", "test", "pending");
+        manager.incrementStat("Tehbeard", uuid, key, 2);
+        manager.incrementStat("Tehbeard", uuid, key, 3);
+        manager.incrementStat("Tehbeard", uuid, key, -1);
+        manager.getPlayer("Tehbeard", uuid).getValue();
+        while (manager.getLoadedBlob(uuid) == null) {
+            Thread.sleep(5);
+        }
+        assertEquals(4, manager.getLoadedBlob(uuid).getStat(key).getValue());
+    }
+
+    /**
+     * A prefetched blob survives saves until its login is refused.
+     */
+    @Test(timeout = 10000)
+    public void testPrefetch() throws InterruptedException {
+        UUID uuid = MojangWebAPI.expandUUID("09d770ac7bfe48a2bf6877cbd21c51a1");
+        manager.prefetch("Tehbeard", uuid);
+        while (manager.getLoadedBlob(uuid) == null) {
+            Thread.sleep(5);
+        }
+        manager.saveCache();
+        assertNotNull(manager.getLoadedBlob(uuid));
+        assertEquals(1, manager.getPrefetchCount());
+
+        manager.cancelPrefetch(uuid);
+        manager.saveCache();
+        assertNull(manager.getLoadedBlob(uuid));
+        assertEquals(0, manager.getPrefetchCount());
+    }
+
+    /**
+     * Prefetching a player with no stats does not create them, and a refused login is forgotten on the next save.
+     */
+    @Test(timeout = 10000)
+    public void testPrefetchRefused() throws InterruptedException {
+        UUID uuid = UUID.randomUUID();
+        manager.prefetch("Refused", uuid);
+        Promise<EntityStatBlob> load = manager.getPlayerAsync("Refused", uuid, false);
+        while (!load.isDone()) {
+            Thread.sleep(5);
+        }
+        assertTrue(load.isRejected());
+
+        manager.cancelPrefetch(uuid);
+        manager.saveCache();
+        assertEquals(0, manager.getPrefetchCount());
+        assertEquals(0, manager.queryDatabase(new ProviderQuery(null, uuid, false).noNameChk()).length);
+    }
+
+    /**
+     * A player the prefetch did not find is created when they join.
+     */
+    @Test(timeout = 10000)
+    public void testPrefetchJoined() {
+        UUID uuid = UUID.randomUUID();
+        manager.prefetch("Joined", uuid);
+        assertEquals("Joined", manager.prefetchJoined("Joined", uuid).getValue().getName());
+        assertEquals(0, manager.getPrefetchCount());
+    }
+
+    /**
+     * Concurrent lookups of one player share a load, and the result is not cached.
+     */
+    @Test
+    public void testLookup() {
+        UUID uuid = MojangWebAPI.expandUUID("09d770ac7bfe48a2bf6877cbd21c51a1");
+        Promise<EntityStatBlob> first = manager.lookup(uuid);
+        for (int i = 0; i < 9; i++) {
+            manager.lookup(uuid);
+        }
+        assertEquals(9, manager.getSharedLookups());
+        assertEquals("Tehbeard", first.getValue().getName());
+        assertNull(manager.getLoadedBlob(uuid));
+    }
+
+    /**
+     * A looked up blob is served from the offline cache the next time, until the player comes online.
+     */
+    @Test(timeout = 10000)
+    public void testOfflineCache() throws InterruptedException {
+        UUID uuid = MojangWebAPI.expandUUID("09d770ac7bfe48a2bf6877cbd21c51a1");
+        manager.lookup(uuid).getValue();
+        while (manager.getOfflineCache().size() == 0) {
+            Thread.sleep(5);
+        }
+        assertEquals("Tehbeard", manager.lookup(uuid).getValue().getName());
+        assertEquals(1, manager.getOfflineCache().getHits());
+
+        manager.getPlayer("Tehbeard", uuid).getValue();
+        assertEquals(0, manager.getOfflineCache().size());
+    }
+
+    /**
+     * Threads asking for the same players at once all get the same promise, so each player is loaded once.
+     */
+    @Test
+    public void testGetConcurrent() throws InterruptedException {
+        final int threads = 16;
+        final int players = 25;
+        final UUID[] uuids = new UUID[players];
+        for (int i = 0; i < players; i++) {
+            uuids[i] = UUID.randomUUID();
+        }
+        final Promise[][] promises = new Promise[threads][players];
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < players; i++) {
+                            //Each thread walks the players from a different offset so they collide on different entries
+                            int p = (i + id) % players;
+                            promises[id][p] = manager.getPlayer("Stress" + p, uuids[p]);
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertNull(error.get());
+
+        for (int p = 0; p < players; p++) {
+            for (int t = 1; t < threads; t++) {
+                assertSame(promises[0][p], promises[t][p]);
+            }
+            EntityStatBlob blob = (EntityStatBlob) promises[0][p].getValue();
+            assertEquals("Stress" + p, blob.getName());
+        }
+    }
+
     /**
      * Test of getPlayer method, of class EntityStatManager.
      */
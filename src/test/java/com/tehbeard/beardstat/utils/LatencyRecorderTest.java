@@ -0,0 +1,63 @@
+package com.tehbeard.beardstat.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author James
+ */
+public class LatencyRecorderTest {
+
+    private static void recordMillis(LatencyRecorder recorder, int from, int to) {
+        for (int i = from; i <= to; i++) {
+            recorder.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        LatencyRecorder recorder = new LatencyRecorder(10);
+        assertEquals(0, recorder.getPercentileMillis(50));
+        assertEquals(0, recorder.getPercentileMillis(99));
+    }
+
+    /**
+     * Nearest rank over 1..100ms, recorded out of order.
+     */
+    @Test
+    public void testPercentiles() {
+        LatencyRecorder recorder = new LatencyRecorder(100);
+        recordMillis(recorder, 51, 100);
+        recordMillis(recorder, 1, 50);
+        assertEquals(100, recorder.getCount());
+        assertEquals(1, recorder.getPercentileMillis(0));
+        assertEquals(1, recorder.getPercentileMillis(1));
+        assertEquals(50, recorder.getPercentileMillis(50));
+        assertEquals(99, recorder.getPercentileMillis(99));
+        assertEquals(100, recorder.getPercentileMillis(100));
+    }
+
+    /**
+     * Only the most recent samples count once the buffer wraps.
+     */
+    @Test
+    public void testWraps() {
+        LatencyRecorder recorder = new LatencyRecorder(4);
+        recordMillis(recorder, 1, 6);
+        assertEquals(6, recorder.getCount());
+        assertEquals(3, recorder.getPercentileMillis(0));
+        assertEquals(4, recorder.getPercentileMillis(50));
+        assertEquals(6, recorder.getPercentileMillis(99));
+    }
+
+    @Test
+    public void testSingleSample() {
+        LatencyRecorder recorder = new LatencyRecorder(8);
+        recorder.record(TimeUnit.MILLISECONDS.toNanos(7));
+        assertEquals(7, recorder.getPercentileMillis(50));
+        assertEquals(7, recorder.getPercentileMillis(99));
+    }
+}
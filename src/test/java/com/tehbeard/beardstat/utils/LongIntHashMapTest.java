@@ -0,0 +1,146 @@
+package com.tehbeard.beardstat.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author James
+ */
+public class LongIntHashMapTest {
+
+    @Test
+    public void testMissing() {
+        LongIntHashMap map = new LongIntHashMap();
+        assertEquals(-1, map.get(42L, -1));
+        assertFalse(map.containsKey(42L));
+        assertEquals(-1, map.remove(42L, -1));
+        map.put(42L, 7);
+        assertEquals(-1, map.get(43L, -1));
+        assertEquals(1, map.size());
+    }
+
+    /**
+     * 0 marks free slots, so it is kept on the side.
+     */
+    @Test
+    public void testZeroKey() {
+        LongIntHashMap map = new LongIntHashMap();
+        assertFalse(map.containsKey(0L));
+        map.put(0L, 5);
+        assertTrue(map.containsKey(0L));
+        assertEquals(5, map.get(0L, -1));
+        assertEquals(1, map.size());
+        assertEquals(0L, map.keys()[0]);
+        assertEquals(5, map.remove(0L, -1));
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(0L));
+    }
+
+    /**
+     * Growing from the smallest table keeps every entry, overwriting does not add one.
+     */
+    @Test
+    public void testResize() {
+        LongIntHashMap map = new LongIntHashMap(1);
+        long before = map.memoryFootprint();
+        for (int i = 1; i <= 1000; i++) {
+            map.put(i * 65537L, i);
+        }
+        map.put(65537L, -1);
+        assertEquals(1000, map.size());
+        assertTrue(map.memoryFootprint() > before);
+        assertEquals(-1, map.get(65537L, 0));
+        for (int i = 2; i <= 1000; i++) {
+            assertEquals(i, map.get(i * 65537L, 0));
+        }
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertEquals(1000, keys.length);
+        assertEquals(65537L, keys[0]);
+        assertEquals(1000 * 65537L, keys[999]);
+    }
+
+    /**
+     * Removing from the middle of a run of colliding keys leaves the keys after it reachable.
+     */
+    @Test
+    public void testRemoveCollisions() {
+        LongIntHashMap map = new LongIntHashMap(12);
+        for (int i = 1; i <= 12; i++) {
+            map.put(i, i * 10);
+        }
+        //12 keys in 16 slots, so the keys form runs of several
+        for (int i = 1; i <= 12; i += 2) {
+            assertEquals(i * 10, map.remove(i, -1));
+        }
+        assertEquals(6, map.size());
+        for (int i = 1; i <= 12; i++) {
+            assertEquals(i % 2 == 0 ? i * 10 : -1, map.get(i, -1));
+        }
+        for (int i = 1; i <= 12; i += 2) {
+            map.put(i, i);
+        }
+        assertEquals(12, map.size());
+        for (int i = 1; i <= 12; i++) {
+            assertEquals(i % 2 == 0 ? i * 10 : i, map.get(i, -1));
+        }
+    }
+
+    /**
+     * Random puts and removes over a small key range, where most keys collide, agree with a {@link HashMap}.
+     */
+    @Test
+    public void testAgainstHashMap() {
+        Random random = new Random(1234);
+        LongIntHashMap map = new LongIntHashMap(4);
+        Map<Long, Integer> expected = new HashMap<Long, Integer>();
+        for (int op = 0; op < 100000; op++) {
+            long key = random.nextInt(64) * 0x100000000L + random.nextInt(4);
+            if (random.nextInt(3) == 0) {
+                Integer removed = expected.remove(key);
+                assertEquals(removed == null ? -1 : removed, map.remove(key, -1));
+            } else {
+                int value = random.nextInt(1000);
+                expected.put(key, value);
+                map.put(key, value);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (long key = 0; key < 64 * 0x100000000L; key += 0x100000000L) {
+            for (int low = 0; low < 4; low++) {
+                Integer value = expected.get(key + low);
+                assertEquals(value == null ? -1 : value, map.get(key + low, -1));
+                assertEquals(value != null, map.containsKey(key + low));
+            }
+        }
+    }
+
+    /**
+     * A copy does not share its tables with the original.
+     */
+    @Test
+    public void testCopy() {
+        LongIntHashMap map = new LongIntHashMap();
+        map.put(0L, 1);
+        map.put(7L, 2);
+        LongIntHashMap copy = new LongIntHashMap(map);
+        copy.remove(7L, -1);
+        copy.put(9L, 3);
+        map.put(0L, 4);
+
+        assertEquals(2, map.size());
+        assertEquals(2, map.get(7L, -1));
+        assertEquals(-1, map.get(9L, -1));
+        assertEquals(2, copy.size());
+        assertEquals(1, copy.get(0L, -1));
+        assertEquals(3, copy.get(9L, -1));
+    }
+}